@@ -7,11 +7,15 @@ import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Observer;
 
+import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -102,6 +106,12 @@ public class TestUtils {
         }
     }
 
+    public static List<UserChange> added(User... users) {
+        List<UserChange> changes = new ArrayList<>();
+        for (User user : users) changes.add(new UserChange(UserChange.Type.ADDED, user, null));
+        return changes;
+    }
+
     public static final String nearbySearchResponse = "{\n" +
             "   \"html_attributions\" : [],\n" +
             "   \"next_page_token\" : \"Aap_uEDpsqlffL0TYMzjz-j-5Rt7WQNRPX9YjfGDC5WOrSuBQebI9SXf3810ACW6zjMPc2Eq14770ae7zQTxO9Am0pAmmGUMPODAGgCrDVgQ7Su2_vJQdiVrWWR0bnej9EIBYzzUG99MEkRNj_aZtbGWRJCVE5mqsgI-OANmleQNG0P4XT5gAWahwKjQs6BOScGCHvdyNmVaIJQAp6_eNqmJUXyDa03byETEVnnt57bp-cLcZLVlG0EFQRUNsmz4qj9OuZzP6nk-z1fuM8IBVkitcJ58yoi1hklA5X1vBLpcmNDpz2ZfakhGy-8jDN34ZDxv1ycpfQuc0C210tGoRC6yKdhZUn6baWC7r7ie0nP0Me9w9p1kJBi9sdwDvlfyYXMv5fqFS2oljxz5XFX2p_Ldz7A8RvCpuXHbL4YkNr8NZrswCn7OdcTp1C3jtw_O\",\n" +
@@ -13,7 +13,9 @@ import androidx.test.platform.app.InstrumentationRegistry;
 
 import com.fthiery.go4lunch.TestUtils.TestUtils;
 import com.fthiery.go4lunch.model.Restaurant;
+import com.google.android.gms.tasks.Tasks;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 
@@ -25,6 +27,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +55,10 @@ public class RestaurantRepositoryTest {
             .setResponseCode(200)
             .setBody(TestUtils.nearbySearchResponse);
 
+    private static final MockResponse mockOverQueryLimitResponse = new MockResponse()
+            .setResponseCode(200)
+            .setBody("{\"html_attributions\": [], \"results\": [], \"status\": \"OVER_QUERY_LIMIT\"}");
+
     private static final MockResponse mockDetailResponse = new MockResponse()
             .setResponseCode(200)
             .setBody(TestUtils.placeDetailResponse);
@@ -80,10 +87,13 @@ public class RestaurantRepositoryTest {
         Retrofit mockRetrofit = new Retrofit.Builder()
                 .baseUrl(mockWebServer.url("/"))
                 .client(client)
+                .addConverterFactory(PlaceResponseConverterFactory.create())
                 .addConverterFactory(GsonConverterFactory.create())
                 .addCallAdapterFactory(RxJava3CallAdapterFactory.create())
                 .build();
 
+        // Nobody is signed in, the documents are read from the default workspace
+        Workspace.getInstance().setId(Workspace.DEFAULT_ID);
         restaurantRepository = new RestaurantRepository(firestore, mockRetrofit.create(GooglePlaceService.class));
     }
 
@@ -99,7 +109,7 @@ public class RestaurantRepositoryTest {
 
         List<Restaurant> restaurants = restaurantRepository
                 .searchRestaurants("", new LatLng(-33.8670522, 151.1957362))
-                .blockingGet();
+                .blockingFirst();
 
         assert (!restaurants.isEmpty());
         assertEquals(restaurants.get(0).getName(),"The Little Snail Restaurant");
@@ -109,6 +119,37 @@ public class RestaurantRepositoryTest {
         assertEquals(restaurants.get(4).getName(),"The Malaya");
     }
 
+    @Test
+    public void testSearchErrorIsNotCached() {
+        mockWebServer.enqueue(mockOverQueryLimitResponse);
+        mockWebServer.enqueue(mockNearbyResponse);
+        LatLng location = new LatLng(-33.8670522, 151.1957362);
+
+        restaurantRepository.searchRestaurants("", location)
+                .test()
+                .awaitDone(3, TimeUnit.SECONDS)
+                .assertError(PlacesStatusException.class);
+        List<Restaurant> restaurants = restaurantRepository
+                .searchRestaurants("", location)
+                .blockingFirst();
+
+        assertEquals(restaurants.get(0).getName(), "The Little Snail Restaurant");
+    }
+
+    @Test
+    public void testSearchErrorKeepsRadius() {
+        mockWebServer.enqueue(mockOverQueryLimitResponse);
+        LatLng location = new LatLng(-33.8670522, 151.1957362);
+        int radius = restaurantRepository.getSearchRadius("", location);
+
+        restaurantRepository.searchRestaurants("", location)
+                .test()
+                .awaitDone(3, TimeUnit.SECONDS)
+                .assertError(PlacesStatusException.class);
+
+        assertEquals(radius, restaurantRepository.getSearchRadius("", location));
+    }
+
     @Test
     public void testGetRestaurant() {
         mockWebServer.enqueue(mockDetailResponse);
@@ -124,6 +165,19 @@ public class RestaurantRepositoryTest {
         assertEquals(restaurant.getWebsiteUrl(), "http://www.thelittlesnail.com.au/");
     }
 
+    @Test
+    public void testGetRestaurantCacheThenServer() {
+        mockWebServer.enqueue(mockDetailResponse);
+
+        Restaurant restaurant = restaurantRepository
+                .getRestaurant("ChIJtwapWjeuEmsRcxV5JARHpSk", PlaceFields.DETAILS, ReadPolicy.CACHE_THEN_SERVER)
+                .timeout(3, TimeUnit.SECONDS)
+                .blockingLast();
+
+        assertEquals(restaurant.getName(), "The Little Snail Restaurant");
+        assertEquals(restaurantRepository.getCacheStats().getRequests(), 1);
+    }
+
     @Test
     public void testWatchRestaurantById() {
         mockWebServer.enqueue(mockDetailResponse);
@@ -153,4 +207,36 @@ public class RestaurantRepositoryTest {
         assertEquals(restaurant.getPhoneNumber(), "(02) 9212 7512");
         assertEquals(restaurant.getWebsiteUrl(), "http://www.thelittlesnail.com.au/");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWatchRestaurants() {
+        mockWebServer.enqueue(mockDetailResponse);
+
+        Restaurant restaurant = restaurantRepository
+                .watchRestaurants(Collections.singletonList("ChIJtwapWjeuEmsRcxV5JARHpSk"), RestaurantRepository.PRIORITY_NOW)
+                .timeout(3, TimeUnit.SECONDS)
+                .blockingFirst();
+
+        assertEquals(restaurant.getId(), "ChIJtwapWjeuEmsRcxV5JARHpSk");
+        assertEquals(restaurant.getName(), "The Little Snail Restaurant");
+        assertEquals(restaurant.getPhoneNumber(), "(02) 9212 7512");
+    }
+
+    @Test
+    public void testSetLike() throws Exception {
+        Tasks.await(workspace(firestore).collection("restaurants").document("r1").set(new Restaurant("r1")));
+
+        Tasks.await(restaurantRepository.setLike("r1", "u1", true));
+        Tasks.await(restaurantRepository.setLike("r1", "u2", true));
+        Tasks.await(restaurantRepository.setLike("r1", "u1", false));
+
+        Restaurant restaurant = Tasks.await(workspace(firestore).collection("restaurants").document("r1").get())
+                .toObject(Restaurant.class);
+        assertEquals(restaurant.getLikes(), Collections.singletonList("u2"));
+    }
+
+    // The documents of the default workspace, used without signed in user
+    private static DocumentReference workspace(FirebaseFirestore firestore) {
+        return firestore.collection("workspaces").document(Workspace.DEFAULT_ID);
+    }
+}
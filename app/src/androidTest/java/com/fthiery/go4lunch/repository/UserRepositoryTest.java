@@ -5,8 +5,15 @@ import static org.junit.Assert.assertEquals;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.fthiery.go4lunch.TestUtils.TestUtils;
+import com.fthiery.go4lunch.model.Restaurant;
 import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
+import com.fthiery.go4lunch.utils.LunchDay;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -16,7 +23,9 @@ import org.junit.runner.RunWith;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @RunWith(AndroidJUnit4.class)
 public class UserRepositoryTest {
@@ -36,7 +45,11 @@ public class UserRepositoryTest {
         user2.setChosenRestaurantId("r2");
         user3.setChosenRestaurantId("r1");
 
-        userRepository = new UserRepository(firestore, TestUtils.firebaseAuthEmulatorInstance());
+        // Nobody is signed in, the documents are read from the default workspace
+        FirebaseAuth auth = TestUtils.firebaseAuthEmulatorInstance();
+        Workspace workspace = new Workspace(auth);
+        workspace.setId(Workspace.DEFAULT_ID);
+        userRepository = new UserRepository(firestore, auth, workspace);
     }
 
     @Before
@@ -44,7 +57,11 @@ public class UserRepositoryTest {
         List<User> userList = Arrays.asList(user1, user2, user3);
 
         for (User user : userList) {
-            firestore.collection("users").document(user.getId()).set(user);
+            workspace(firestore).collection("users").document(user.getId()).set(user);
+            // Today's choices are stored apart from the users, and only hold the chosen restaurant
+            workspace(firestore).collection("lunches").document(LunchDay.today())
+                    .collection("choices").document(user.getId())
+                    .set(Collections.singletonMap("chosenRestaurantId", user.getChosenRestaurantId()));
         }
     }
 
@@ -64,6 +81,28 @@ public class UserRepositoryTest {
         assert (users.get(2).equals(user3));
     }
 
+    @Test
+    public void watchUserChanges() {
+        List<UserChange> changes = userRepository
+                .watchUserChanges()
+                .blockingFirst();
+
+        assertEquals(changes.size(), 3);
+        assertEquals(changes.get(0).getType(), UserChange.Type.ADDED);
+        assert (changes.get(0).getUser().equals(user1));
+    }
+
+    @Test
+    public void watchUserChangesEatingAt() {
+        List<UserChange> changes = userRepository
+                .watchUserChangesEatingAt("r1")
+                .blockingFirst();
+
+        assertEquals(changes.size(), 2);
+        assert (changes.get(0).getUser().equals(user1));
+        assert (changes.get(1).getUser().equals(user3));
+    }
+
     @Test
     public void watchNumberOfUsers() {
         int nUsers = userRepository
@@ -83,8 +122,21 @@ public class UserRepositoryTest {
     }
 
     @Test
-    public void setChosenRestaurant() {
-        userRepository.setChosenRestaurant(user1.getId(),"r3");
+    public void watchUsersEatingAtFollowsProfileChanges() throws Exception {
+        Tasks.await(workspace(firestore).collection("users").document(user1.getId())
+                .update("name", "Michael"));
+
+        List<User> users = userRepository
+                .watchUsersEatingAt("r1")
+                .filter(list -> list.size() == 2 && "Michael".equals(list.get(0).getName()))
+                .blockingFirst();
+
+        assertEquals(users.get(0).getChosenRestaurantId(), "r1");
+    }
+
+    @Test
+    public void setChosenRestaurant() throws Exception {
+        Tasks.await(userRepository.setChosenRestaurant(user1.getId(),"r3"));
         String restaurant = userRepository
                 .getChosenRestaurant(user1.getId())
                 .blockingGet();
@@ -92,14 +144,40 @@ public class UserRepositoryTest {
         assertEquals(restaurant,"r3");
     }
 
+    @Test
+    public void setChosenRestaurantCountsWorkmates() throws Exception {
+        DocumentReference restaurant = workspace(firestore).collection("restaurants").document("r4");
+        Tasks.await(restaurant.set(new Restaurant("r4")));
+
+        Tasks.await(userRepository.setChosenRestaurant(user2.getId(), "r4"));
+        assertEquals(Tasks.await(restaurant.get()).toObject(Restaurant.class).getWorkmates(), 1);
+
+        Tasks.await(userRepository.setChosenRestaurant(user2.getId(), ""));
+        assertEquals(Tasks.await(restaurant.get()).toObject(Restaurant.class).getWorkmates(), 0);
+    }
+
+    @Test
+    public void setChosenRestaurantCountsWorkmatesBeforeRestaurantIsStored() throws Exception {
+        DocumentReference restaurant = workspace(firestore).collection("restaurants").document("r5");
+
+        Tasks.await(userRepository.setChosenRestaurant(user2.getId(), "r5"));
+        // The details are stored afterwards, without touching the count
+        Tasks.await(restaurant.set(new Restaurant("r5"), SetOptions.mergeFields("id", "name")));
+        assertEquals(Tasks.await(restaurant.get()).toObject(Restaurant.class).getWorkmates(), 1);
+
+        Tasks.await(userRepository.setChosenRestaurant(user2.getId(), ""));
+        assertEquals(Tasks.await(restaurant.get()).toObject(Restaurant.class).getWorkmates(), 0);
+    }
+
     @Test
     public void watchChosenRestaurants() {
-        List<String> restaurants = userRepository
+        Map<String, Integer> restaurants = userRepository
                 .watchChosenRestaurants()
                 .blockingFirst();
 
-        assertEquals(restaurants.get(0), "r1");
-        assertEquals(restaurants.get(1), "r2");
+        assertEquals(restaurants.size(), 2);
+        assertEquals((int) restaurants.get("r1"), 2);
+        assertEquals((int) restaurants.get("r2"), 1);
     }
 
     @Test
@@ -128,4 +206,9 @@ public class UserRepositoryTest {
 
         assert (user.equals(user1));
     }
-}
\ No newline at end of file
+
+    // The documents of the default workspace, used without signed in user
+    private static DocumentReference workspace(FirebaseFirestore firestore) {
+        return firestore.collection("workspaces").document(Workspace.DEFAULT_ID);
+    }
+}
@@ -1,5 +1,6 @@
 package com.fthiery.go4lunch.viewmodel;
 
+import static com.fthiery.go4lunch.TestUtils.TestUtils.added;
 import static com.fthiery.go4lunch.TestUtils.TestUtils.getOrAwaitValue;
 import static junit.framework.TestCase.assertEquals;
 
@@ -46,11 +47,11 @@ public class DetailViewModelTest {
         Mockito.when(mockRestaurantRepository.getRestaurant("1")).thenReturn(Single.just(restaurant1));
         Mockito.when(mockRestaurantRepository.watchRestaurant("1")).thenReturn(Observable.just(restaurant1));
         Mockito.when(mockRestaurantRepository.watchRestaurant(new Restaurant("1"))).thenReturn(Observable.just(restaurant1));
-        Mockito.when(mockRestaurantRepository.searchRestaurants("", new LatLng(0, 0))).thenReturn(Single.just(Arrays.asList(restaurant1, restaurant2, restaurant3)));
+        Mockito.when(mockRestaurantRepository.searchRestaurants("", new LatLng(0, 0))).thenReturn(Observable.just(Arrays.asList(restaurant1, restaurant2, restaurant3)));
 
         UserRepository mockUserRepository = Mockito.mock(UserRepository.class);
         Mockito.when(mockUserRepository.watchNumberOfUsers()).thenReturn(Observable.just(3));
-        Mockito.when(mockUserRepository.watchUsersEatingAt("1")).thenReturn(Observable.just(Arrays.asList(user1,user2,user3)));
+        Mockito.when(mockUserRepository.watchUserChangesEatingAt("1")).thenReturn(Observable.just(added(user1,user2,user3)));
         Mockito.when(mockUserRepository.getChosenRestaurant("u1")).thenReturn(Single.just("1"));
         Mockito.when(mockUserRepository.watchChosenRestaurant("u1")).thenReturn(Observable.just("1"));
         Mockito.when(mockUserRepository.getCurrentUserId()).thenReturn("u1");
@@ -86,4 +87,4 @@ public class DetailViewModelTest {
         String id = viewModel.getUserId();
         assertEquals(id, "u1");
     }
-}
\ No newline at end of file
+}
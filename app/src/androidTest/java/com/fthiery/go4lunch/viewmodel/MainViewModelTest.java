@@ -1,9 +1,12 @@
 package com.fthiery.go4lunch.viewmodel;
 
+import static com.fthiery.go4lunch.TestUtils.TestUtils.added;
 import static com.fthiery.go4lunch.TestUtils.TestUtils.getOrAwaitValue;
 import static junit.framework.TestCase.assertEquals;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
@@ -22,7 +25,7 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
 
 import io.reactivex.rxjava3.core.Observable;
@@ -56,15 +59,16 @@ public class MainViewModelTest {
         Mockito.when(mockRestaurantRepository.watchRestaurant("3")).thenReturn(Observable.just(restaurant3));
         Mockito.when(mockRestaurantRepository.watchRestaurant(any(Restaurant.class)))
                 .then(invocation -> Observable.just(invocation.getArgument(0,Restaurant.class)));
-        Mockito.when(mockRestaurantRepository.searchRestaurants(any(), any())).thenReturn(Single.just(Arrays.asList(restaurant1, restaurant2, restaurant3)));
+        Mockito.when(mockRestaurantRepository.watchRestaurants(anyCollection(), anyInt()))
+                .then(invocation -> Observable.fromIterable(invocation.<Collection<String>>getArgument(0))
+                        .flatMap(mockRestaurantRepository::watchRestaurant));
+        Mockito.when(mockRestaurantRepository.searchRestaurants(any(), any())).thenReturn(Observable.just(Arrays.asList(restaurant1, restaurant2, restaurant3)));
+        Mockito.when(mockRestaurantRepository.watchUnavailableRestaurants()).thenReturn(Observable.never());
 
         UserRepository mockUserRepository = Mockito.mock(UserRepository.class);
         Mockito.when(mockUserRepository.watchCurrentUser()).thenReturn(Observable.just(user1));
         Mockito.when(mockUserRepository.watchNumberOfUsers()).thenReturn(Observable.just(3));
-        Mockito.when(mockUserRepository.watchUsersEatingAt("1")).thenReturn(Observable.just(Arrays.asList(user1,user2)));
-        Mockito.when(mockUserRepository.watchUsersEatingAt("2")).thenReturn(Observable.just(Collections.singletonList(user3)));
-        Mockito.when(mockUserRepository.watchUsersEatingAt("3")).thenReturn(Observable.just(Collections.emptyList()));
-        Mockito.when(mockUserRepository.watchAllUsers()).thenReturn(Observable.just(Arrays.asList(user1,user2,user3)));
+        Mockito.when(mockUserRepository.watchUserChanges()).thenReturn(Observable.just(added(user1,user2,user3)));
         Mockito.when(mockUserRepository.getChosenRestaurant("u1")).thenReturn(Single.just("1"));
         Mockito.when(mockUserRepository.watchChosenRestaurant("u1")).thenReturn(Observable.just("1"));
         Mockito.when(mockUserRepository.getCurrentUserId()).thenReturn("u1");
@@ -98,4 +102,4 @@ public class MainViewModelTest {
 
         assert(user.equals(user1));
     }
-}
\ No newline at end of file
+}
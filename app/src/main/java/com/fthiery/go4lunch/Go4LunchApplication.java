@@ -0,0 +1,22 @@
+package com.fthiery.go4lunch;
+
+import android.app.Application;
+
+import com.fthiery.go4lunch.repository.PlacesHttpClient;
+import com.fthiery.go4lunch.repository.RestaurantRepository;
+
+import java.io.File;
+
+public class Go4LunchApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Give Places requests an HTTP cache before the client is created
+        PlacesHttpClient.init(new File(getCacheDir(), "places-http"));
+
+        // Keep the results of Nearby Searches between launches
+        RestaurantRepository.getInstance().setSearchCacheDirectory(new File(getCacheDir(), "nearby-search"));
+    }
+}
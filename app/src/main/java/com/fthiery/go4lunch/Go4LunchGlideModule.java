@@ -0,0 +1,25 @@
+package com.fthiery.go4lunch;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.module.AppGlideModule;
+import com.fthiery.go4lunch.repository.PlacesHttpClient;
+
+import java.io.InputStream;
+
+@GlideModule
+public class Go4LunchGlideModule extends AppGlideModule {
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        // Load photos through the client used for the other Places requests
+        registry.replace(GlideUrl.class, InputStream.class, new OkHttpUrlLoader.Factory(PlacesHttpClient.getInstance()));
+    }
+}
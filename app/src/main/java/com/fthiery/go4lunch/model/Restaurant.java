@@ -8,6 +8,7 @@ import com.fthiery.go4lunch.BuildConfig;
 import com.fthiery.go4lunch.model.placedetails.Geometry;
 import com.fthiery.go4lunch.model.placedetails.OpeningHours;
 import com.fthiery.go4lunch.model.placedetails.Photo;
+import com.fthiery.go4lunch.utils.LunchDay;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.firebase.firestore.Exclude;
 import com.google.gson.annotations.Expose;
@@ -18,7 +19,9 @@ import com.google.maps.android.clustering.ClusterItem;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 
@@ -55,9 +58,10 @@ public class Restaurant implements ClusterItem {
     private List<String> likes = new ArrayList<>();
 
     /**
-     * Number of workmates eating at this restaurant
+     * Number of workmates eating at this restaurant, keyed by day and kept up to date when users choose a restaurant.
+     * Only the day of the last choice is kept
      **/
-    private transient int workmates = 0;
+    private Map<String, Integer> workmatesByDay = new HashMap<>();
 
     /**
      * Distance from the user's device
@@ -86,7 +90,7 @@ public class Restaurant implements ClusterItem {
         this.address = that.address;
         this.phoneNumber = that.phoneNumber;
         this.websiteUrl = that.websiteUrl;
-        this.workmates = that.workmates;
+        this.workmatesByDay = that.workmatesByDay;
         this.distance = that.distance;
         this.openingHours = that.openingHours;
         this.photos = that.photos;
@@ -154,13 +158,21 @@ public class Restaurant implements ClusterItem {
         this.websiteUrl = websiteUrl;
     }
 
+    /**
+     * @return the number of workmates eating at this restaurant today
+     */
     @Exclude
     public int getWorkmates() {
-        return workmates;
+        Integer workmates = workmatesByDay.get(LunchDay.today());
+        return workmates != null ? Math.max(workmates, 0) : 0;
+    }
+
+    public Map<String, Integer> getWorkmatesByDay() {
+        return workmatesByDay;
     }
 
-    public void setWorkmates(int workmates) {
-        this.workmates = workmates;
+    public void setWorkmatesByDay(Map<String, Integer> workmatesByDay) {
+        this.workmatesByDay = workmatesByDay != null ? workmatesByDay : new HashMap<>();
     }
 
     public OpeningHours getOpeningHours() {
@@ -251,7 +263,7 @@ public class Restaurant implements ClusterItem {
 
         Restaurant that = (Restaurant) o;
 
-        if (workmates != that.workmates) return false;
+        if (!Objects.equals(workmatesByDay, that.workmatesByDay)) return false;
         if (distance != that.distance) return false;
         if (!id.equals(that.id)) return false;
         if (rating != that.rating) return false;
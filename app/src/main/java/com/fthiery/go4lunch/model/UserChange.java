@@ -0,0 +1,44 @@
+package com.fthiery.go4lunch.model;
+
+/**
+ * A user added, modified or removed by a snapshot of the users or of the choices of the day
+ */
+public class UserChange {
+
+    public enum Type {ADDED, MODIFIED, REMOVED}
+
+    private final Type type;
+    private final User user;
+    private final String previousChosenRestaurantId;
+
+    /**
+     * @param type                       the type of the change
+     * @param user                       the user after the change, or before it when removed
+     * @param previousChosenRestaurantId the chosen restaurant before the change, null when added
+     */
+    public UserChange(Type type, User user, String previousChosenRestaurantId) {
+        this.type = type;
+        this.user = user;
+        this.previousChosenRestaurantId = previousChosenRestaurantId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getPreviousChosenRestaurantId() {
+        return previousChosenRestaurantId;
+    }
+
+    /**
+     * @return false when only the other fields of the user have been modified
+     */
+    public boolean isChosenRestaurantChanged() {
+        return type != Type.MODIFIED
+                || !user.getChosenRestaurantId().equals(previousChosenRestaurantId);
+    }
+}
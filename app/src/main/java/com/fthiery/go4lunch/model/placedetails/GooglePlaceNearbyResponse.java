@@ -11,6 +11,11 @@ public class GooglePlaceNearbyResponse {
 
     private List<Restaurant> results;
 
+    @SerializedName("next_page_token")
+    private String nextPageToken;
+
+    private String status;
+
     public List<Restaurant> getResults() {
         return results;
     }
@@ -19,6 +24,22 @@ public class GooglePlaceNearbyResponse {
         this.results = results;
     }
 
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public void setNextPageToken(String nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
     public List<String> getRestaurantIds() {
         List<String> list = new ArrayList<>();
         for (Restaurant r : results) {
@@ -0,0 +1,127 @@
+package com.fthiery.go4lunch.repository;
+
+import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.ObservableEmitter;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Function;
+
+/**
+ * Joins choices with the users who made them. A choice only holds the Id of the restaurant, the name
+ * and the photo are read from the user, so that they follow the changes of the profile.
+ * A user is watched as long as their choice is kept.
+ */
+public class ChoiceJoin {
+
+    private final Function<String, Observable<User>> users;
+
+    /**
+     * @param users watches a user by Id
+     */
+    public ChoiceJoin(Function<String, Observable<User>> users) {
+        this.users = users;
+    }
+
+    /**
+     * Each emission of choices holds every choice to join. Once every user of the choices has been received,
+     * the users added, modified or removed since the previous emission are emitted, possibly none.
+     * A later change of a user emits that user alone.
+     *
+     * @param choices the chosen restaurant Id by user Id
+     * @return an Observable of the changes of the joined users
+     */
+    public Observable<List<UserChange>> join(Observable<Map<String, String>> choices) {
+        return Observable.create(emitter -> {
+            Join join = new Join(emitter);
+            Disposable disposable = choices.subscribe(join::setChoices, emitter::tryOnError, emitter::onComplete);
+            emitter.setCancellable(() -> {
+                disposable.dispose();
+                join.dispose();
+            });
+        });
+    }
+
+    private class Join {
+        private final ObservableEmitter<List<UserChange>> emitter;
+        private final Map<String, String> choices = new LinkedHashMap<>();
+        // The latest version of each user whose choice is kept, and the listener of that user
+        private final Map<String, User> received = new HashMap<>();
+        private final Map<String, Disposable> listeners = new HashMap<>();
+        // The users emitted, with their choice
+        private final Map<String, User> joined = new HashMap<>();
+        private boolean choicesPending;
+
+        Join(ObservableEmitter<List<UserChange>> emitter) {
+            this.emitter = emitter;
+        }
+
+        synchronized void setChoices(Map<String, String> next) throws Throwable {
+            choices.clear();
+            choices.putAll(next);
+            choicesPending = true;
+
+            Iterator<Map.Entry<String, Disposable>> iterator = listeners.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Disposable> listener = iterator.next();
+                if (choices.containsKey(listener.getKey())) continue;
+                listener.getValue().dispose();
+                received.remove(listener.getKey());
+                iterator.remove();
+            }
+            for (String userId : next.keySet()) {
+                if (listeners.containsKey(userId)) continue;
+                // A listener sharing a cached user calls back right away, the others are still awaited
+                listeners.put(userId, users.apply(userId).subscribe(
+                        user -> receive(userId, user), emitter::tryOnError));
+            }
+            emitChanges();
+        }
+
+        synchronized void receive(String userId, User user) {
+            if (!choices.containsKey(userId)) return;
+            received.put(userId, user);
+            emitChanges();
+        }
+
+        // Waits for every user of the choices, so that a first emission holds all of them
+        private void emitChanges() {
+            if (!received.keySet().containsAll(choices.keySet())) return;
+
+            List<UserChange> changes = new ArrayList<>();
+            Iterator<User> iterator = joined.values().iterator();
+            while (iterator.hasNext()) {
+                User user = iterator.next();
+                if (choices.containsKey(user.getId())) continue;
+                iterator.remove();
+                changes.add(new UserChange(UserChange.Type.REMOVED, user, user.getChosenRestaurantId()));
+            }
+            for (Map.Entry<String, String> choice : choices.entrySet()) {
+                User user = new User(received.get(choice.getKey()));
+                user.setId(choice.getKey());
+                user.setChosenRestaurantId(choice.getValue());
+
+                User previous = joined.put(user.getId(), user);
+                if (previous == null)
+                    changes.add(new UserChange(UserChange.Type.ADDED, user, null));
+                else if (!previous.equals(user))
+                    changes.add(new UserChange(UserChange.Type.MODIFIED, user, previous.getChosenRestaurantId()));
+            }
+            if (choicesPending || !changes.isEmpty()) emitter.onNext(changes);
+            choicesPending = false;
+        }
+
+        synchronized void dispose() {
+            for (Disposable listener : listeners.values()) listener.dispose();
+            listeners.clear();
+        }
+    }
+}
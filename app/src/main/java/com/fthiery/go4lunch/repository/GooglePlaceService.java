@@ -18,11 +18,16 @@ public interface GooglePlaceService {
     @GET("nearbysearch/json?type=restaurant&key=" + BuildConfig.MAPS_API_KEY)
     Single<GooglePlaceNearbyResponse> searchPlaces(@Query("location") String location, @Query("keyword") String keyword, @Query("radius") int radius);
 
+    @GET("nearbysearch/json?key=" + BuildConfig.MAPS_API_KEY)
+    Single<GooglePlaceNearbyResponse> searchNextPlaces(@Query("pagetoken") String pageToken);
+
     @GET("details/json?key=" + BuildConfig.MAPS_API_KEY)
-    Single<GooglePlaceDetailResponse> getPlaceInfo(@Query("placeid") String placeId);
+    Single<GooglePlaceDetailResponse> getPlaceInfo(@Query("placeid") String placeId, @Query("fields") PlaceFields fields);
 
     Retrofit retrofit = new Retrofit.Builder()
             .baseUrl("https://maps.googleapis.com/maps/api/place/")
+            .client(PlacesHttpClient.getInstance())
+            .addConverterFactory(PlaceResponseConverterFactory.create())
             .addConverterFactory(GsonConverterFactory.create())
             .addCallAdapterFactory(RxJava3CallAdapterFactory.create())
             .build();
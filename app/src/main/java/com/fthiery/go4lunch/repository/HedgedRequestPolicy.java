@@ -0,0 +1,158 @@
+package com.fthiery.go4lunch.repository;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import retrofit2.HttpException;
+
+/**
+ * Runs requests within a latency budget:
+ * - if the request is slower than the 95th percentile of its endpoint, a duplicate is sent
+ * and the first answer is kept, the other one is cancelled. Only idempotent and cheap requests
+ * are hedged, as every duplicate is a billed call
+ * - failed attempts are retried after a jittered exponential backoff, as long as the deadline allows it
+ * The request is subscribed to for each attempt and each duplicate, so that a rate limiter
+ * wrapping it is applied to every call
+ */
+public class HedgedRequestPolicy {
+
+    private static final int LATENCY_SAMPLES = 50;
+    private static final int MIN_SAMPLES_FOR_HEDGING = 10;
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final long MIN_HEDGE_DELAY_MS = 100;
+    private static final long BASE_BACKOFF_MS = 200;
+
+    private final long deadlineMs;
+    private final int maxAttempts;
+    private final long defaultHedgeDelayMs;
+    private final Scheduler scheduler;
+    private final Random random = new Random();
+    private final Map<String, LatencyTracker> latencies = new HashMap<>();
+
+    /**
+     * @param deadlineMs          the time after which a request fails, retries included
+     * @param maxAttempts         the maximum number of attempts, the first one included
+     * @param defaultHedgeDelayMs the hedge delay used until enough latencies are known
+     */
+    public HedgedRequestPolicy(long deadlineMs, int maxAttempts, long defaultHedgeDelayMs) {
+        this(deadlineMs, maxAttempts, defaultHedgeDelayMs, Schedulers.computation());
+    }
+
+    public HedgedRequestPolicy(long deadlineMs, int maxAttempts, long defaultHedgeDelayMs, Scheduler scheduler) {
+        this.deadlineMs = deadlineMs;
+        this.maxAttempts = maxAttempts;
+        this.defaultHedgeDelayMs = defaultHedgeDelayMs;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Runs an idempotent and cheap request, hedged and retried
+     *
+     * @param endpoint the name of the endpoint, the latencies are tracked separately for each one
+     * @param request  the request, subscribed to again for each attempt and each hedge
+     * @return a Single giving the first answer
+     */
+    public <T> Single<T> execute(String endpoint, Single<T> request) {
+        return execute(endpoint, request, true);
+    }
+
+    /**
+     * Runs a request without duplicates, only retried
+     *
+     * @param endpoint the name of the endpoint, the latencies are tracked separately for each one
+     * @param request  the request, subscribed to again for each attempt
+     * @return a Single giving the answer
+     */
+    public <T> Single<T> retry(String endpoint, Single<T> request) {
+        return execute(endpoint, request, false);
+    }
+
+    private <T> Single<T> execute(String endpoint, Single<T> request, boolean hedged) {
+        LatencyTracker tracker = getLatencyTracker(endpoint);
+
+        return Single.defer(() -> {
+            long deadline = scheduler.now(TimeUnit.MILLISECONDS) + deadlineMs;
+            int[] attempts = {0};
+
+            return attempt(request, tracker, hedged)
+                    .retryWhen(errors -> errors.flatMap(error -> {
+                        attempts[0]++;
+                        long backoff = backoff(attempts[0]);
+                        long remaining = deadline - scheduler.now(TimeUnit.MILLISECONDS);
+                        if (attempts[0] >= maxAttempts || !isRetryable(error) || backoff >= remaining)
+                            return Flowable.error(error);
+                        return Flowable.timer(backoff, TimeUnit.MILLISECONDS, scheduler);
+                    }))
+                    .timeout(deadlineMs, TimeUnit.MILLISECONDS, scheduler);
+        });
+    }
+
+    /**
+     * @return the latencies of the successful requests, by endpoint
+     */
+    public Map<String, LatencyTracker> getLatencyStats() {
+        synchronized (latencies) {
+            return new HashMap<>(latencies);
+        }
+    }
+
+    /**
+     * @return the delay after which a duplicate request is sent
+     */
+    public long getHedgeDelay(String endpoint) {
+        return hedgeDelay(getLatencyTracker(endpoint));
+    }
+
+    private long hedgeDelay(LatencyTracker tracker) {
+        if (tracker.getCount() < MIN_SAMPLES_FOR_HEDGING) return defaultHedgeDelayMs;
+        return Math.max(MIN_HEDGE_DELAY_MS, Math.min(deadlineMs / 2, tracker.getPercentile(HEDGE_PERCENTILE)));
+    }
+
+    private LatencyTracker getLatencyTracker(String endpoint) {
+        synchronized (latencies) {
+            LatencyTracker tracker = latencies.get(endpoint);
+            if (tracker == null) {
+                tracker = new LatencyTracker(LATENCY_SAMPLES);
+                latencies.put(endpoint, tracker);
+            }
+            return tracker;
+        }
+    }
+
+    // When hedged, the first request to answer wins, the other one is disposed of, which cancels its call.
+    // The latency is measured from the first request, even when the duplicate wins
+    private <T> Single<T> attempt(Single<T> request, LatencyTracker tracker, boolean hedged) {
+        return Single.defer(() -> {
+            long start = scheduler.now(TimeUnit.MILLISECONDS);
+            Single<T> attempt = !hedged ? request : Single.ambArray(
+                    request,
+                    request.delaySubscription(hedgeDelay(tracker), TimeUnit.MILLISECONDS, scheduler));
+            return attempt.doOnSuccess(result -> tracker.record(scheduler.now(TimeUnit.MILLISECONDS) - start));
+        });
+    }
+
+    // Full jitter: a random delay between 0 and an exponentially growing bound
+    private long backoff(int attempt) {
+        long bound = BASE_BACKOFF_MS << Math.min(attempt - 1, 10);
+        synchronized (random) {
+            return (long) (random.nextDouble() * bound);
+        }
+    }
+
+    private boolean isRetryable(Throwable error) {
+        if (error instanceof IOException || error instanceof TimeoutException) return true;
+        if (error instanceof HttpException) {
+            int code = ((HttpException) error).code();
+            return code == 429 || code >= 500;
+        }
+        return false;
+    }
+}
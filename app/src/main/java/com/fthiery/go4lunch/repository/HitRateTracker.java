@@ -0,0 +1,40 @@
+package com.fthiery.go4lunch.repository;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Counts the reads served by a cache
+ */
+public class HitRateTracker {
+
+    private long hits = 0;
+    private long requests = 0;
+
+    public synchronized void record(boolean hit) {
+        requests++;
+        if (hit) hits++;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the part of the reads served by the cache, between 0 and 1, or 0 without any
+     */
+    public synchronized double getHitRate() {
+        return requests != 0 ? (double) hits / requests : 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "n=%d hits=%d rate=%.2f", getRequests(), getHits(), getHitRate());
+    }
+}
@@ -0,0 +1,55 @@
+package com.fthiery.go4lunch.repository;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the latencies of the last requests made to an endpoint
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;
+
+    /**
+     * @param size the number of latencies kept
+     */
+    public LatencyTracker(int size) {
+        samples = new long[size];
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+    }
+
+    /**
+     * @return the number of latencies kept
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 1, e.g. 0.95
+     * @return the latency under which this part of the requests completed, or -1 without any
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) return -1;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "n=%d p50=%dms p95=%dms p99=%dms",
+                getCount(), getPercentile(0.5), getPercentile(0.95), getPercentile(0.99));
+    }
+}
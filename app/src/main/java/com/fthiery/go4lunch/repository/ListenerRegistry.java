@@ -0,0 +1,80 @@
+package com.fthiery.go4lunch.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.functions.Supplier;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Shares Firestore listeners between subscribers, keyed by document path or query.
+ * Subscribers of the same key share one listener and get its latest value right away.
+ * The listener is removed a short time after its last subscriber has left, so that
+ * a screen replacing another one can reuse it.
+ */
+public class ListenerRegistry {
+
+    private static final long DEFAULT_GRACE_PERIOD_MS = 5000;
+
+    private final long gracePeriodMs;
+    private final Scheduler scheduler;
+    private final Map<String, Observable<?>> listeners = new HashMap<>();
+
+    public ListenerRegistry() {
+        this(DEFAULT_GRACE_PERIOD_MS, Schedulers.computation());
+    }
+
+    /**
+     * @param gracePeriodMs how long a listener is kept without subscribers
+     * @param scheduler     the scheduler of the grace period
+     */
+    public ListenerRegistry(long gracePeriodMs, Scheduler scheduler) {
+        this.gracePeriodMs = gracePeriodMs;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param key    the path of the document, or a description of the query
+     * @param source creates the Observable registering the listener, called once per registration
+     * @return an Observable shared by every subscriber of the key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> share(String key, Supplier<Observable<T>> source) {
+        synchronized (listeners) {
+            Observable<T> shared = (Observable<T>) listeners.get(key);
+            if (shared == null) {
+                shared = register(key, source);
+                listeners.put(key, shared);
+            }
+            return shared;
+        }
+    }
+
+    private <T> Observable<T> register(String key, Supplier<Observable<T>> source) {
+        AtomicReference<Observable<T>> registration = new AtomicReference<>();
+        Observable<T> shared = Observable.defer(source)
+                .doFinally(() -> {
+                    synchronized (listeners) {
+                        // The key may already belong to a newer registration
+                        listeners.remove(key, registration.get());
+                    }
+                })
+                .replay(1)
+                .refCount(gracePeriodMs, TimeUnit.MILLISECONDS, scheduler);
+        registration.set(shared);
+        return shared;
+    }
+
+    /**
+     * @return the number of keys with a registered listener
+     */
+    public int size() {
+        synchronized (listeners) {
+            return listeners.size();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.fthiery.go4lunch.repository;
+
+import com.fthiery.go4lunch.model.UserChange;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The users grouped by chosen restaurant, kept up to date from the changes of the choices of a lunch.
+ * A single index is shared by every watcher of the lunch, so that the users and the count of a restaurant
+ * are read without querying the choices again.
+ */
+public class LunchIndex {
+
+    private final String lunch;
+    // The chosen restaurant Id by user Id
+    private final Map<String, String> choices = new HashMap<>();
+    private final Map<String, Set<String>> userIdsByRestaurant = new HashMap<>();
+
+    /**
+     * @param lunch the workspace and the day of the choices, e.g. "example.com/2022-01-31"
+     */
+    public LunchIndex(String lunch) {
+        this.lunch = lunch;
+    }
+
+    public String getLunch() {
+        return lunch;
+    }
+
+    /**
+     * Applies the changes of a snapshot of the choices
+     */
+    public synchronized void apply(List<UserChange> changes) {
+        for (UserChange change : changes) {
+            String userId = change.getUser().getId();
+            String previous = choices.remove(userId);
+            if (previous != null) unindex(userId, previous);
+            if (change.getType() == UserChange.Type.REMOVED) continue;
+
+            String restaurantId = change.getUser().getChosenRestaurantId();
+            if (restaurantId.isEmpty()) continue;
+            choices.put(userId, restaurantId);
+            Set<String> userIds = userIdsByRestaurant.get(restaurantId);
+            if (userIds == null) {
+                userIds = new LinkedHashSet<>();
+                userIdsByRestaurant.put(restaurantId, userIds);
+            }
+            userIds.add(userId);
+        }
+    }
+
+    private void unindex(String userId, String restaurantId) {
+        Set<String> userIds = userIdsByRestaurant.get(restaurantId);
+        if (userIds == null) return;
+        userIds.remove(userId);
+        if (userIds.isEmpty()) userIdsByRestaurant.remove(restaurantId);
+    }
+
+    /**
+     * @return the restaurant chosen by the user, or an empty String
+     */
+    public synchronized String getChosenRestaurantId(String userId) {
+        String restaurantId = choices.get(userId);
+        return restaurantId != null ? restaurantId : "";
+    }
+
+    /**
+     * @param restaurantId the Id of the restaurant
+     * @return the chosen restaurant Id by user Id of the users eating there, in the order of the choices
+     */
+    public synchronized Map<String, String> getChoicesAt(String restaurantId) {
+        Map<String, String> result = new LinkedHashMap<>();
+        Set<String> userIds = userIdsByRestaurant.get(restaurantId);
+        if (userIds != null) for (String userId : userIds) result.put(userId, restaurantId);
+        return result;
+    }
+
+    public synchronized int getCount(String restaurantId) {
+        Set<String> userIds = userIdsByRestaurant.get(restaurantId);
+        return userIds != null ? userIds.size() : 0;
+    }
+
+    /**
+     * Compares the counts of the restaurants with those read previously, and updates them
+     *
+     * @param counts the counts read previously, updated to the current ones
+     * @return the count of each restaurant whose count has changed, 0 when nobody has chosen it anymore
+     */
+    public synchronized Map<String, Integer> getChangedCounts(Map<String, Integer> counts) {
+        Map<String, Integer> changed = new HashMap<>();
+        Iterator<Map.Entry<String, Integer>> iterator = counts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String restaurantId = iterator.next().getKey();
+            if (userIdsByRestaurant.containsKey(restaurantId)) continue;
+            changed.put(restaurantId, 0);
+            iterator.remove();
+        }
+        for (Map.Entry<String, Set<String>> userIds : userIdsByRestaurant.entrySet()) {
+            String restaurantId = userIds.getKey();
+            int count = userIds.getValue().size();
+            Integer previous = counts.put(restaurantId, count);
+            if (previous == null || previous != count) changed.put(restaurantId, count);
+        }
+        return changed;
+    }
+}
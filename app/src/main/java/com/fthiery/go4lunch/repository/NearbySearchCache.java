@@ -0,0 +1,163 @@
+package com.fthiery.go4lunch.repository;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.fthiery.go4lunch.model.Restaurant;
+import com.fthiery.go4lunch.utils.GeoHash;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps the results of Nearby Searches, in memory and on disk, keyed by geohash cell, keyword
+ * and radius. A search made anywhere inside a cell can be answered by the results of a previous
+ * search in the same cell.
+ */
+public class NearbySearchCache {
+
+    private static final int MAX_MEMORY_ENTRIES = 32;
+
+    private final long ttlMillis;
+    private final Gson gson = new Gson();
+    private final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    @Nullable
+    private volatile File directory;
+
+    /**
+     * @param ttlMillis how long the results of a search are considered valid
+     */
+    public NearbySearchCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Enables the disk cache
+     *
+     * @param directory the directory where the results are stored
+     */
+    public void setDirectory(File directory) {
+        if (directory.isDirectory() || directory.mkdirs()) this.directory = directory;
+    }
+
+    public static String keyFor(LatLng location, String keyword, int radius) {
+        String cell = GeoHash.encode(location.latitude, location.longitude, GeoHash.precisionFor(radius));
+        return cell + "|" + radius + "|" + keyword.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param key the key of the search, given by {@link #keyFor}
+     * @return the cached entry, or null if there is none or if it has expired
+     */
+    @Nullable
+    public Entry get(String key) {
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+        }
+        if (entry == null) {
+            entry = readFromDisk(key);
+            if (entry != null) synchronized (memory) {
+                memory.put(key, entry);
+            }
+        }
+        if (entry == null || entry.getAge() > ttlMillis) return null;
+        return entry;
+    }
+
+    /**
+     * @param key the key of the search, given by {@link #keyFor}
+     * @return true if a valid entry is cached for the key. The disk is checked without reading the entry
+     */
+    public boolean contains(String key) {
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+        }
+        if (entry != null) return entry.getAge() <= ttlMillis;
+        File file = fileFor(key);
+        // 0 if the file doesn't exist
+        return file != null && System.currentTimeMillis() - file.lastModified() <= ttlMillis;
+    }
+
+    public void put(String key, List<Restaurant> restaurants) {
+        Entry entry = new Entry(key, System.currentTimeMillis(), restaurants);
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        writeToDisk(entry);
+    }
+
+    /**
+     * @return true if the entry is old enough to be refreshed in the background
+     */
+    public boolean needsRevalidation(Entry entry) {
+        return entry.getAge() > ttlMillis / 2;
+    }
+
+    @Nullable
+    private Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (file == null || !file.exists()) return null;
+        try (Reader reader = new FileReader(file)) {
+            Entry entry = gson.fromJson(reader, Entry.class);
+            // Two keys can share a file name, check it is the right one
+            return entry != null && key.equals(entry.key) ? entry : null;
+        } catch (Exception e) {
+            Log.w("NearbySearchCache", "readFromDisk: ", e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(Entry entry) {
+        File file = fileFor(entry.key);
+        if (file == null) return;
+        try (Writer writer = new FileWriter(file)) {
+            gson.toJson(entry, writer);
+        } catch (IOException e) {
+            Log.w("NearbySearchCache", "writeToDisk: ", e);
+        }
+    }
+
+    @Nullable
+    private File fileFor(String key) {
+        File dir = directory;
+        return dir != null ? new File(dir, Integer.toHexString(key.hashCode()) + ".json") : null;
+    }
+
+    public static class Entry {
+        private final String key;
+        private final long time;
+        private final List<Restaurant> restaurants;
+
+        Entry(String key, long time, List<Restaurant> restaurants) {
+            this.key = key;
+            this.time = time;
+            this.restaurants = restaurants;
+        }
+
+        public List<Restaurant> getRestaurants() {
+            return restaurants;
+        }
+
+        long getAge() {
+            return System.currentTimeMillis() - time;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.fthiery.go4lunch.repository;
+
+import androidx.annotation.NonNull;
+
+import com.fthiery.go4lunch.model.Restaurant;
+import com.google.gson.annotations.SerializedName;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The fields requested to the Place Details API. Restricting them reduces the size of the
+ * response and the cost of the request.
+ */
+public class PlaceFields {
+
+    /**
+     * Every field deserialized into a Restaurant
+     **/
+    public static final PlaceFields DETAILS = of(Restaurant.class);
+
+    /**
+     * What is needed to display a restaurant in a list or a notification
+     **/
+    public static final PlaceFields SUMMARY = of("place_id", "name", "formatted_address", "photos", "geometry");
+
+    private final Set<String> fields;
+
+    private PlaceFields(Set<String> fields) {
+        this.fields = Collections.unmodifiableSet(fields);
+    }
+
+    public static PlaceFields of(String... fields) {
+        return new PlaceFields(new LinkedHashSet<>(Arrays.asList(fields)));
+    }
+
+    /**
+     * @param type a class deserialized from Places responses
+     * @return the fields of the JSON object mapped to the class
+     */
+    public static PlaceFields of(Class<?> type) {
+        Set<String> fields = new LinkedHashSet<>();
+        for (Field field : type.getDeclaredFields()) {
+            SerializedName name = field.getAnnotation(SerializedName.class);
+            if (name != null && !Modifier.isTransient(field.getModifiers()) && !Modifier.isStatic(field.getModifiers()))
+                fields.add(name.value());
+        }
+        return new PlaceFields(fields);
+    }
+
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public boolean containsAll(PlaceFields that) {
+        return fields.containsAll(that.fields);
+    }
+
+    // Used by Retrofit as the value of the "fields" parameter
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (String field : fields) {
+            if (builder.length() > 0) builder.append(',');
+            builder.append(field);
+        }
+        return builder.toString();
+    }
+}
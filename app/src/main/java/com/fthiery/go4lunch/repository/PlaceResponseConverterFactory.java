@@ -0,0 +1,45 @@
+package com.fthiery.go4lunch.repository;
+
+import androidx.annotation.Nullable;
+
+import com.fthiery.go4lunch.model.placedetails.GooglePlaceDetailResponse;
+import com.fthiery.go4lunch.model.placedetails.GooglePlaceNearbyResponse;
+import com.google.gson.stream.JsonReader;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Converts Places responses with {@link PlaceResponseParser}, straight from the response body.
+ * Other types are left to the next converter factory.
+ */
+public class PlaceResponseConverterFactory extends Converter.Factory {
+
+    public static PlaceResponseConverterFactory create() {
+        return new PlaceResponseConverterFactory();
+    }
+
+    @Nullable
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (type == GooglePlaceNearbyResponse.class) {
+            return (Converter<ResponseBody, GooglePlaceNearbyResponse>) body -> {
+                try (JsonReader reader = new JsonReader(body.charStream())) {
+                    return PlaceResponseParser.readNearbyResponse(reader);
+                }
+            };
+        }
+        if (type == GooglePlaceDetailResponse.class) {
+            return (Converter<ResponseBody, GooglePlaceDetailResponse>) body -> {
+                try (JsonReader reader = new JsonReader(body.charStream())) {
+                    return PlaceResponseParser.readDetailResponse(reader);
+                }
+            };
+        }
+        return null;
+    }
+}
@@ -0,0 +1,228 @@
+package com.fthiery.go4lunch.repository;
+
+import com.fthiery.go4lunch.model.Restaurant;
+import com.fthiery.go4lunch.model.placedetails.Geometry;
+import com.fthiery.go4lunch.model.placedetails.GooglePlaceDetailResponse;
+import com.fthiery.go4lunch.model.placedetails.GooglePlaceNearbyResponse;
+import com.fthiery.go4lunch.model.placedetails.Moment;
+import com.fthiery.go4lunch.model.placedetails.OpeningHours;
+import com.fthiery.go4lunch.model.placedetails.Period;
+import com.fthiery.go4lunch.model.placedetails.Photo;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads Places responses token by token. Only the fields mapped to a Restaurant are read,
+ * every other subtree is skipped without being built.
+ */
+public class PlaceResponseParser {
+
+    private PlaceResponseParser() {
+    }
+
+    public static GooglePlaceNearbyResponse readNearbyResponse(JsonReader reader) throws IOException {
+        GooglePlaceNearbyResponse response = new GooglePlaceNearbyResponse();
+        List<Restaurant> results = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "results":
+                    reader.beginArray();
+                    while (reader.hasNext()) results.add(readRestaurant(reader));
+                    reader.endArray();
+                    break;
+                case "next_page_token":
+                    response.setNextPageToken(readString(reader));
+                    break;
+                case "status":
+                    response.setStatus(readString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        response.setResult(results);
+        return response;
+    }
+
+    public static GooglePlaceDetailResponse readDetailResponse(JsonReader reader) throws IOException {
+        GooglePlaceDetailResponse response = new GooglePlaceDetailResponse();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("result") && reader.peek() == JsonToken.BEGIN_OBJECT)
+                response.setResult(readRestaurant(reader));
+            else reader.skipValue();
+        }
+        reader.endObject();
+
+        return response;
+    }
+
+    private static Restaurant readRestaurant(JsonReader reader) throws IOException {
+        Restaurant restaurant = new Restaurant();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "place_id":
+                    restaurant.setId(readString(reader));
+                    break;
+                case "name":
+                    restaurant.setName(readString(reader));
+                    break;
+                case "formatted_address":
+                    restaurant.setAddress(readString(reader));
+                    break;
+                case "formatted_phone_number":
+                    restaurant.setPhoneNumber(readString(reader));
+                    break;
+                case "website":
+                    restaurant.setWebsiteUrl(readString(reader));
+                    break;
+                case "photos":
+                    restaurant.setPhotos(readFirstPhoto(reader));
+                    break;
+                case "opening_hours":
+                    restaurant.setOpeningHours(readOpeningHours(reader));
+                    break;
+                case "geometry":
+                    restaurant.setGeometry(readGeometry(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return restaurant;
+    }
+
+    // Only the first photo is ever displayed
+    private static List<Photo> readFirstPhoto(JsonReader reader) throws IOException {
+        Photo first = null;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (first == null && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("photo_reference")) {
+                        first = new Photo();
+                        first.setPhotoReference(readString(reader));
+                    } else reader.skipValue();
+                }
+                reader.endObject();
+            } else reader.skipValue();
+        }
+        reader.endArray();
+
+        return first != null ? Collections.singletonList(first) : null;
+    }
+
+    // Nearby Search only gives "open_now", in that case there are no opening hours to keep
+    private static OpeningHours readOpeningHours(JsonReader reader) throws IOException {
+        List<Period> periods = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("periods")) {
+                periods = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) periods.add(readPeriod(reader));
+                reader.endArray();
+            } else reader.skipValue();
+        }
+        reader.endObject();
+
+        if (periods == null) return null;
+        OpeningHours openingHours = new OpeningHours();
+        openingHours.setPeriods(periods);
+        return openingHours;
+    }
+
+    private static Period readPeriod(JsonReader reader) throws IOException {
+        Period period = new Period();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "open":
+                    period.setOpen(readMoment(reader));
+                    break;
+                case "close":
+                    period.setClose(readMoment(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return period;
+    }
+
+    private static Moment readMoment(JsonReader reader) throws IOException {
+        Moment moment = new Moment();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "day":
+                    moment.setDay(reader.nextInt());
+                    break;
+                case "time":
+                    moment.setTime(readString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return moment;
+    }
+
+    private static Geometry readGeometry(JsonReader reader) throws IOException {
+        Geometry geometry = new Geometry();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("location")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "lat":
+                            geometry.getLocation().setLat(reader.nextDouble());
+                            break;
+                        case "lng":
+                            geometry.getLocation().setLng(reader.nextDouble());
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else reader.skipValue();
+        }
+        reader.endObject();
+
+        return geometry;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
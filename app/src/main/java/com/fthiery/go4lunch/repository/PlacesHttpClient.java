@@ -0,0 +1,172 @@
+package com.fthiery.go4lunch.repository;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * The OkHttpClient shared by every request to Google Places: searches, details and photos.
+ * Sharing it keeps a single connection pool, dispatcher and HTTP cache.
+ * Gzip is negotiated and decoded transparently by OkHttp.
+ */
+public class PlacesHttpClient {
+
+    private static final long CACHE_SIZE = 20L * 1024 * 1024;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+    // Lifetimes applied to Places responses that come without cache headers
+    private static final long NEARBY_SEARCH_MAX_AGE_S = TimeUnit.MINUTES.toSeconds(30);
+    private static final long DETAILS_MAX_AGE_S = TimeUnit.DAYS.toSeconds(1);
+    // Places reports its errors in the body of a 200 response, only these statuses are cached
+    private static final Pattern CACHEABLE_STATUS = Pattern.compile("\"status\"\\s*:\\s*\"(OK|ZERO_RESULTS)\"");
+    // Error responses are much shorter
+    private static final long STATUS_PEEK_BYTES = 4096;
+
+    private static volatile OkHttpClient instance;
+    private static File cacheDirectory;
+
+    private PlacesHttpClient() {
+    }
+
+    /**
+     * Enables the HTTP disk cache. Must be called before the client is first used
+     *
+     * @param directory the directory of the cache
+     */
+    public static synchronized void init(File directory) {
+        cacheDirectory = directory;
+    }
+
+    public static OkHttpClient getInstance() {
+        OkHttpClient result = instance;
+
+        if (result != null) {
+            return result;
+        }
+        synchronized (PlacesHttpClient.class) {
+            if (instance == null) {
+                instance = build();
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * @param maxRequests the maximum number of requests executed at the same time on one host
+     */
+    public static void setMaxRequestsPerHost(int maxRequests) {
+        getInstance().dispatcher().setMaxRequestsPerHost(maxRequests);
+    }
+
+    private static OkHttpClient build() {
+        return build(cacheDirectory);
+    }
+
+    static OkHttpClient build(File directory) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(DEFAULT_MAX_REQUESTS_PER_HOST);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .addNetworkInterceptor(new CacheLifetimeInterceptor());
+
+        if (directory != null) {
+            Cache cache = new Cache(directory, CACHE_SIZE);
+            builder.cache(cache).addInterceptor(new CacheStatusInterceptor(cache));
+        }
+
+        return builder.build();
+    }
+
+    private static long maxAgeFor(Request request) {
+        // A page token is only valid once, and may not be valid yet
+        if (request.url().queryParameter("pagetoken") != null) return 0;
+
+        String path = request.url().encodedPath();
+        if (!path.startsWith("/maps/api/place/")) return 0;
+        if (path.contains("/nearbysearch/")) return NEARBY_SEARCH_MAX_AGE_S;
+        if (path.contains("/details/")) return DETAILS_MAX_AGE_S;
+        return 0;
+    }
+
+    /**
+     * Gives a lifetime to Places responses that the server sends without cache headers,
+     * so that the HTTP cache can store them. Photos are not concerned: the photo endpoint redirects
+     * to a host that sends its own cache headers
+     */
+    private static class CacheLifetimeInterceptor implements Interceptor {
+
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+
+            if (!response.isSuccessful()
+                    || response.header("Cache-Control") != null
+                    || response.header("Expires") != null) return response;
+
+            long maxAge = maxAgeFor(request);
+            if (maxAge <= 0) return response;
+
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .header("Cache-Control", "public, max-age=" + maxAge)
+                    .build();
+        }
+    }
+
+    /**
+     * Places reports its errors in the body of a 200 response, which is still gzipped when the
+     * lifetime is given. Once decoded, responses with another status than OK or ZERO_RESULTS
+     * are removed from the cache
+     */
+    private static class CacheStatusInterceptor implements Interceptor {
+
+        private final Cache cache;
+
+        CacheStatusInterceptor(Cache cache) {
+            this.cache = cache;
+        }
+
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+
+            ResponseBody body = response.body();
+            // Responses served by the cache were checked when they were stored
+            if (body == null || response.networkResponse() == null || maxAgeFor(request) <= 0) return response;
+
+            // Errors come without results, longer bodies hold results
+            ResponseBody start = response.peekBody(STATUS_PEEK_BYTES);
+            if (start.contentLength() >= STATUS_PEEK_BYTES || CACHEABLE_STATUS.matcher(start.string()).find())
+                return response;
+
+            // Reading the body to its end completes its cache entry, which can then be removed
+            ResponseBody error = ResponseBody.create(body.bytes(), body.contentType());
+            String url = request.url().toString();
+            for (Iterator<String> urls = cache.urls(); urls.hasNext(); ) {
+                if (urls.next().equals(url)) urls.remove();
+            }
+            return response.newBuilder().body(error).build();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.fthiery.go4lunch.repository;
+
+/**
+ * A Places response whose status reports an error, e.g. OVER_QUERY_LIMIT or REQUEST_DENIED.
+ * Places sends them with a 200 HTTP status
+ */
+public class PlacesStatusException extends RuntimeException {
+
+    private final String status;
+
+    public PlacesStatusException(String status) {
+        super("Places status: " + status);
+        this.status = status;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,19 @@
+package com.fthiery.go4lunch.repository;
+
+/**
+ * Where a document is read from
+ */
+public enum ReadPolicy {
+    /**
+     * Only the Firestore local cache, nothing is emitted if the document is not cached
+     **/
+    CACHE_ONLY,
+    /**
+     * The cached document is emitted right away, then the document of the server
+     **/
+    CACHE_THEN_SERVER,
+    /**
+     * Only the server, the cache is ignored
+     **/
+    SERVER_ONLY
+}
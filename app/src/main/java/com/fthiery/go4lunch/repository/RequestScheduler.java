@@ -0,0 +1,172 @@
+package com.fthiery.go4lunch.repository;
+
+import androidx.annotation.NonNull;
+
+import com.fthiery.go4lunch.utils.TokenBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleEmitter;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Runs requests with a limited concurrency and a limited rate. Waiting requests are started
+ * by order of priority, the lowest value first, then by order of arrival.
+ */
+public class RequestScheduler {
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    private final int maxConcurrency;
+    private final TokenBucket rateLimiter;
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+    private long sequence = 0;
+    private int running = 0;
+    private boolean drainScheduled = false;
+
+    /**
+     * @param maxConcurrency the maximum number of requests running at the same time
+     * @param rateLimiter    gives the rate at which requests may start
+     */
+    public RequestScheduler(int maxConcurrency, TokenBucket rateLimiter) {
+        this.maxConcurrency = maxConcurrency;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Queues a request. It is subscribed to once a slot and a token are available,
+     * and disposed of if the returned Single is disposed of
+     *
+     * @param request  the request to run
+     * @param priority the priority of the request, the lowest value first
+     * @return a Single giving the result of the request
+     */
+    public <T> Single<T> schedule(Single<T> request, int priority) {
+        return Single.create(emitter -> {
+            Task<T> task;
+            synchronized (this) {
+                task = new Task<>(request, priority, sequence++, emitter);
+                queue.add(task);
+            }
+            emitter.setCancellable(task::cancel);
+            drain();
+        });
+    }
+
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void drain() {
+        List<Task<?>> ready = new ArrayList<>();
+        synchronized (this) {
+            while (running < maxConcurrency && !queue.isEmpty()) {
+                long wait = rateLimiter.tryAcquire();
+                if (wait > 0) {
+                    scheduleDrain(wait);
+                    break;
+                }
+                Task<?> task = queue.poll();
+                task.state = RUNNING;
+                running++;
+                ready.add(task);
+            }
+        }
+        for (Task<?> task : ready) task.start();
+    }
+
+    // Called with the lock held, when the next request has to wait for a token
+    private void scheduleDrain(long delayNanos) {
+        if (drainScheduled) return;
+        drainScheduled = true;
+        Schedulers.computation().scheduleDirect(() -> {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            drain();
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private class Task<T> implements Comparable<Task<?>> {
+        private final Single<T> request;
+        private final int priority;
+        private final long order;
+        private final SingleEmitter<T> emitter;
+        private int state = QUEUED;
+        private Disposable disposable;
+
+        Task(Single<T> request, int priority, long order, SingleEmitter<T> emitter) {
+            this.request = request;
+            this.priority = priority;
+            this.order = order;
+            this.emitter = emitter;
+        }
+
+        void start() {
+            Disposable subscription = request.subscribe(this::onSuccess, this::onError);
+            synchronized (RequestScheduler.this) {
+                // Cancelled while subscribing
+                if (state != RUNNING) {
+                    subscription.dispose();
+                    return;
+                }
+                disposable = subscription;
+            }
+        }
+
+        void onSuccess(T value) {
+            if (finish()) {
+                emitter.onSuccess(value);
+                drain();
+            }
+        }
+
+        void onError(Throwable throwable) {
+            if (finish()) {
+                emitter.tryOnError(throwable);
+                drain();
+            }
+        }
+
+        void cancel() {
+            Disposable toDispose = null;
+            synchronized (RequestScheduler.this) {
+                if (state == QUEUED) {
+                    queue.remove(this);
+                } else if (state == RUNNING) {
+                    running--;
+                    toDispose = disposable;
+                }
+                state = DONE;
+            }
+            if (toDispose != null) toDispose.dispose();
+            drain();
+        }
+
+        private boolean finish() {
+            synchronized (RequestScheduler.this) {
+                if (state != RUNNING) return false;
+                state = DONE;
+                running--;
+                return true;
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull Task<?> that) {
+            if (priority != that.priority) return Integer.compare(priority, that.priority);
+            return Long.compare(order, that.order);
+        }
+    }
+}
@@ -7,34 +7,143 @@ import android.util.Log;
 import com.fthiery.go4lunch.model.Restaurant;
 import com.fthiery.go4lunch.model.placedetails.GooglePlaceDetailResponse;
 import com.fthiery.go4lunch.model.placedetails.GooglePlaceNearbyResponse;
+import com.fthiery.go4lunch.utils.TokenBucket;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.maps.android.SphericalUtil;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.annotations.NonNull;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.PublishSubject;
 
 public class RestaurantRepository {
 
+    /**
+     * A next_page_token only becomes valid a short time after it has been issued
+     **/
+    private static final long NEXT_PAGE_DELAY_MS = 2000;
+    private static final int NEXT_PAGE_RETRIES = 3;
+
+    /**
+     * How long the results of a Nearby Search are reused for searches made in the same place
+     **/
+    private static final long SEARCH_CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(30);
+
+    // Limits of the Place Details requests made for restaurants missing from Firestore
+    private static final int MAX_CONCURRENT_DETAILS = 4;
+    private static final int DETAILS_BURST = 8;
+    private static final double DETAILS_PER_SECOND = 5;
+
+    // Fields written with the details of a restaurant. likes and workmatesByDay are only changed field by field
+    private static final List<String> DETAILS_FIELDS = Arrays.asList(
+            "id", "name", "photos", "address", "phoneNumber", "websiteUrl", "openingHours", "geometry");
+
+    // Maximum number of values of a whereIn query
+    private static final int WHERE_IN_LIMIT = 10;
+
+    // Latency budget of every Places request: retried until the deadline.
+    // Only Place Details are hedged after the p95 latency, a duplicated search would be billed twice
+    private static final long PLACES_DEADLINE_MS = TimeUnit.SECONDS.toMillis(15);
+    private static final int PLACES_MAX_ATTEMPTS = 3;
+    private static final long PLACES_DEFAULT_HEDGE_DELAY_MS = TimeUnit.SECONDS.toMillis(2);
+
+    // Default radius of the searches, with and without keyword, adapted to the density of each area
+    private static final int KEYWORD_SEARCH_RADIUS = 5000;
+    private static final int NEARBY_SEARCH_RADIUS = 800;
+    // One page of results fills a screen
+    private static final int TARGET_SEARCH_RESULTS = 20;
+
+    /**
+     * Priority of a restaurant needed right now, e.g. on the detail screen.
+     * Restaurants of a list use their distance in meters as priority
+     **/
+    public static final int PRIORITY_NOW = 0;
+    // Prefetched restaurants come after every restaurant of a list
+    private static final int PRIORITY_PREFETCH = 1_000_000;
+
+    // Budget of the Places requests made ahead of the user: searches and details
+    private static final int PREFETCH_BURST = 20;
+    private static final double PREFETCH_PER_SECOND = 20 / 60d;
+
     private static volatile RestaurantRepository instance;
     private final FirebaseFirestore db;
     private final GooglePlaceService service;
+    private final NearbySearchCache searchCache;
+    private final RequestScheduler detailsScheduler;
+    private final HedgedRequestPolicy placesPolicy;
+    private final Workspace workspace;
+    private final Set<String> pendingRevalidations = new HashSet<>();
+    private final Map<String, Single<Restaurant>> pendingDetails = new HashMap<>();
+    private final SearchRadiusController nearbyRadius =
+            new SearchRadiusController(TARGET_SEARCH_RESULTS, NEARBY_SEARCH_RADIUS, 200, 5000);
+    private final SearchRadiusController keywordRadius =
+            new SearchRadiusController(TARGET_SEARCH_RESULTS, KEYWORD_SEARCH_RADIUS, 1000, 20000);
+    private final ListenerRegistry listeners = new ListenerRegistry();
+    private final HitRateTracker cacheHits = new HitRateTracker();
+    private final TokenBucket prefetchBudget = new TokenBucket(PREFETCH_BURST, PREFETCH_PER_SECOND);
+    private final PublishSubject<String> unavailableRestaurants = PublishSubject.create();
 
     public RestaurantRepository() {
-        db = FirebaseFirestore.getInstance();
-        service = retrofit.create(GooglePlaceService.class);
+        this(FirebaseFirestore.getInstance(), retrofit.create(GooglePlaceService.class));
     }
 
     public RestaurantRepository(FirebaseFirestore firestoreInstance, GooglePlaceService placeService) {
+        this(firestoreInstance, placeService, new NearbySearchCache(SEARCH_CACHE_TTL_MS));
+    }
+
+    public RestaurantRepository(FirebaseFirestore firestoreInstance, GooglePlaceService placeService, NearbySearchCache nearbySearchCache) {
+        this(firestoreInstance, placeService, nearbySearchCache,
+                new RequestScheduler(MAX_CONCURRENT_DETAILS, new TokenBucket(DETAILS_BURST, DETAILS_PER_SECOND)));
+    }
+
+    public RestaurantRepository(FirebaseFirestore firestoreInstance, GooglePlaceService placeService, NearbySearchCache nearbySearchCache, RequestScheduler detailsRequestScheduler) {
+        this(firestoreInstance, placeService, nearbySearchCache, detailsRequestScheduler,
+                new HedgedRequestPolicy(PLACES_DEADLINE_MS, PLACES_MAX_ATTEMPTS, PLACES_DEFAULT_HEDGE_DELAY_MS));
+    }
+
+    public RestaurantRepository(FirebaseFirestore firestoreInstance, GooglePlaceService placeService, NearbySearchCache nearbySearchCache, RequestScheduler detailsRequestScheduler, HedgedRequestPolicy placesRequestPolicy) {
+        this(firestoreInstance, placeService, nearbySearchCache, detailsRequestScheduler, placesRequestPolicy,
+                Workspace.getInstance());
+    }
+
+    public RestaurantRepository(FirebaseFirestore firestoreInstance, GooglePlaceService placeService, NearbySearchCache nearbySearchCache, RequestScheduler detailsRequestScheduler, HedgedRequestPolicy placesRequestPolicy, Workspace currentWorkspace) {
         db = firestoreInstance;
         service = placeService;
+        searchCache = nearbySearchCache;
+        detailsScheduler = detailsRequestScheduler;
+        placesPolicy = placesRequestPolicy;
+        workspace = currentWorkspace;
     }
 
     public static RestaurantRepository getInstance() {
@@ -51,82 +160,502 @@ public class RestaurantRepository {
         }
     }
 
-    public Single<List<Restaurant>> searchRestaurants(String keyword, LatLng location) {
+    /**
+     * Stores the results of Nearby Searches on disk, so that they survive the application
+     *
+     * @param directory the directory of the cache
+     */
+    public void setSearchCacheDirectory(File directory) {
+        searchCache.setDirectory(directory);
+    }
+
+    /**
+     * @return the latencies of the Places requests, by endpoint
+     */
+    public Map<String, LatencyTracker> getPlacesLatencyStats() {
+        return placesPolicy.getLatencyStats();
+    }
+
+    /**
+     * @return the part of the restaurants read by getRestaurant served by the Firestore cache
+     */
+    public HitRateTracker getCacheStats() {
+        return cacheHits;
+    }
+
+    /**
+     * Searches restaurants around a location. If the same search was made recently in the same
+     * geohash cell, its results are reused. Otherwise results are emitted one page at a time:
+     * the first page as soon as it is received, the following ones as they are loaded in the background.
+     * The radius of the search is adapted to the density of restaurants in the area
+     *
+     * @param keyword  the search keyword, or an empty String
+     * @param location the center of the search
+     * @return an Observable of pages of restaurants
+     */
+    public Observable<List<Restaurant>> searchRestaurants(String keyword, LatLng location) {
+        int radius = getSearchRadius(keyword, location);
+        String key = NearbySearchCache.keyFor(location, keyword, radius);
+
+        return Observable.defer(() -> {
+            NearbySearchCache.Entry cached = searchCache.get(key);
+            if (cached == null) return searchAndCache(key, keyword, location, radius);
+
+            if (searchCache.needsRevalidation(cached)) revalidate(key, keyword, location, radius);
+            return Observable.just(cached.getRestaurants());
+        })
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Warms the caches for a place the user is heading to: its Nearby Search, then the details
+     * of its closest restaurants. Requests beyond the prefetch budget are skipped.
+     * Photos are not prefetched: the photo endpoint answers with a redirect that the HTTP cache
+     * doesn't keep, Glide would request it again.
+     * Disposing of the prefetch cancels its pending requests
+     *
+     * @param location       the predicted location of the user
+     * @param maxRestaurants the maximum number of restaurants prefetched
+     * @return a Completable
+     */
+    public Completable prefetch(LatLng location, int maxRestaurants) {
+        int radius = getSearchRadius("", location);
+        String key = NearbySearchCache.keyFor(location, "", radius);
+
+        return Observable.defer(() -> {
+            NearbySearchCache.Entry cached = searchCache.get(key);
+            if (cached != null) return Observable.just(cached.getRestaurants());
+            if (!takePrefetchBudget()) return Observable.<List<Restaurant>>empty();
+            return searchAndCache(key, "", location, radius);
+        })
+                .subscribeOn(Schedulers.io())
+                .flatMapIterable(restaurants -> restaurants)
+                .toSortedList((left, right) -> Double.compare(
+                        SphericalUtil.computeDistanceBetween(left.getPosition(), location),
+                        SphericalUtil.computeDistanceBetween(right.getPosition(), location)))
+                .flattenAsObservable(restaurants -> restaurants.subList(0, Math.min(maxRestaurants, restaurants.size())))
+                .flatMapCompletable(restaurant -> prefetchRestaurant(restaurant,
+                        PRIORITY_PREFETCH + (int) SphericalUtil.computeDistanceBetween(restaurant.getPosition(), location)));
+    }
+
+    private Completable prefetchRestaurant(Restaurant restaurant, int priority) {
+        return workspace.watchId().firstOrError()
+                .flatMap(id -> Single.<Boolean>create(emitter -> getRestaurantsCollection()
+                        .document(restaurant.getId())
+                        .get()
+                        .addOnSuccessListener(document -> emitter.onSuccess(hasDetails(document)))
+                        .addOnFailureListener(emitter::tryOnError)))
+                .flatMapCompletable(stored -> stored || !takePrefetchBudget()
+                        ? Completable.complete()
+                        : fetchAndStoreRestaurant(restaurant.getId(), priority).ignoreElement())
+                .doOnError(throwable -> Log.w("RestaurantRepository", "prefetch: ", throwable))
+                .onErrorComplete();
+    }
+
+    private boolean takePrefetchBudget() {
+        return prefetchBudget.tryAcquire() == 0;
+    }
+
+    private Observable<List<Restaurant>> searchAndCache(String key, String keyword, LatLng location, int radius) {
+        List<Restaurant> results = new ArrayList<>();
+        AtomicBoolean received = new AtomicBoolean();
+
+        // Only complete searches are cached: every page received, each with a successful status
+        return searchPlaces(keyword, location, radius)
+                .doOnNext(page -> {
+                    received.set(true);
+                    results.addAll(page);
+                })
+                .doOnComplete(() -> {
+                    searchCache.put(key, results);
+                    // Errors never reach this point, they would be taken for an empty area
+                    radiusController(keyword).record(location, radius, results.size());
+                })
+                // Keep the pages already received if a following one fails
+                .onErrorResumeNext(throwable -> {
+                    if (!received.get()) return Observable.error(throwable);
+                    Log.w("RestaurantRepository", "searchRestaurants: next page", throwable);
+                    return Observable.empty();
+                });
+    }
+
+    /**
+     * @param keyword  the search keyword, or an empty String
+     * @param location the center of the search
+     * @return the radius of the last search in the area while its results are cached, otherwise
+     * the radius adapted to its number of results
+     */
+    public int getSearchRadius(String keyword, LatLng location) {
+        SearchRadiusController controller = radiusController(keyword);
+        int lastRadius = controller.lastRadiusFor(location);
+        if (searchCache.contains(NearbySearchCache.keyFor(location, keyword, lastRadius))) return lastRadius;
+        return controller.radiusFor(location);
+    }
+
+    /**
+     * @return the key under which the results of the search are cached
+     */
+    public String getSearchKey(String keyword, LatLng location) {
+        return NearbySearchCache.keyFor(location, keyword, getSearchRadius(keyword, location));
+    }
+
+    private SearchRadiusController radiusController(String keyword) {
+        return keyword.isEmpty() ? nearbyRadius : keywordRadius;
+    }
+
+    private void revalidate(String key, String keyword, LatLng location, int radius) {
+        // Only one background refresh at a time for a given search
+        synchronized (pendingRevalidations) {
+            if (!pendingRevalidations.add(key)) return;
+        }
+        Disposable disposable = searchAndCache(key, keyword, location, radius)
+                .doFinally(() -> {
+                    synchronized (pendingRevalidations) {
+                        pendingRevalidations.remove(key);
+                    }
+                })
+                .subscribe(
+                        restaurants -> {},
+                        throwable -> Log.w("RestaurantRepository", "revalidate: ", throwable));
+    }
+
+    private Observable<List<Restaurant>> searchPlaces(String keyword, LatLng location, int radius) {
         String latLng = location.latitude + "," + location.longitude;
-        int radius = (keyword.length() >= 1) ? 5000 : 800;
 
-        return service.searchPlaces(latLng, keyword, radius)
+        return placesPolicy.retry("nearbysearch", service.searchPlaces(latLng, keyword, radius))
                 .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .timeout(10, TimeUnit.SECONDS)
+                .flatMap(RestaurantRepository::checkStatus)
+                .toObservable()
+                .concatMap(this::withNextPages)
                 .map(GooglePlaceNearbyResponse::getResults);
     }
 
+    private Observable<GooglePlaceNearbyResponse> withNextPages(GooglePlaceNearbyResponse page) {
+        String pageToken = page.getNextPageToken();
+        if (pageToken == null || pageToken.isEmpty()) return Observable.just(page);
+
+        Observable<GooglePlaceNearbyResponse> nextPages = placesPolicy
+                .retry("nearbysearch/page", Single.defer(() -> service.searchNextPlaces(pageToken)))
+                .flatMap(RestaurantRepository::checkStatus)
+                .delaySubscription(NEXT_PAGE_DELAY_MS, TimeUnit.MILLISECONDS, Schedulers.io())
+                // INVALID_REQUEST: the page token is not valid yet
+                .retry(NEXT_PAGE_RETRIES, throwable -> throwable instanceof PlacesStatusException
+                        && "INVALID_REQUEST".equals(((PlacesStatusException) throwable).getStatus()))
+                .toObservable()
+                .concatMap(this::withNextPages);
+
+        return Observable.just(page).concatWith(nextPages);
+    }
+
+    // Places reports its errors in the status of the response
+    private static Single<GooglePlaceNearbyResponse> checkStatus(GooglePlaceNearbyResponse response) {
+        String status = response.getStatus();
+        if ("OK".equals(status) || "ZERO_RESULTS".equals(status)) return Single.just(response);
+        return Single.error(new PlacesStatusException(status));
+    }
+
     public Observable<Restaurant> watchRestaurant(Restaurant restaurant) {
         return watchRestaurant(restaurant.getId());
     }
 
-    public Observable<Restaurant> watchRestaurant(String placeId) {
+    /**
+     * @param restaurant a restaurant of a list
+     * @param priority   the priority of its details request, if it is missing from Firestore
+     * @return an Observable
+     */
+    public Observable<Restaurant> watchRestaurant(Restaurant restaurant, int priority) {
+        return watchRestaurant(restaurant.getId(), priority);
+    }
+
+    /**
+     * Watches several restaurants with one listener per group of 10 Ids, the limit of a whereIn query.
+     * The restaurants missing from Firestore are requested to Places, then stored.
+     * The restaurants are read again from the new workspace when it changes
+     *
+     * @param placeIds the Ids of the restaurants
+     * @param priority the priority of their details requests, if they are missing from Firestore
+     * @return an Observable emitting each restaurant, then each update of it
+     */
+    public Observable<Restaurant> watchRestaurants(Collection<String> placeIds, int priority) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(placeIds));
+        List<Observable<Restaurant>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += WHERE_IN_LIMIT) {
+            chunks.add(watchRestaurantChunk(ids.subList(i, Math.min(ids.size(), i + WHERE_IN_LIMIT)), priority));
+        }
+        return workspace.watchId().switchMap(id -> Observable.merge(chunks));
+    }
+
+    private Observable<Restaurant> watchRestaurantChunk(List<String> placeIds, int priority) {
         return Observable.create(emitter -> {
-            if (placeId != null) {
-                ListenerRegistration listener = db.collection("restaurants")
-                        .document(placeId)
-                        .addSnapshotListener((document, error) -> {
-                            if (error != null)
-                                Log.e("RestaurantRepository", "watchRestaurant: ", error);
-
-                            if (document != null && document.exists()) {
-                                Restaurant restaurant = document.toObject(Restaurant.class);
-                                emitter.onNext(restaurant != null ? restaurant : new Restaurant());
-                            } else {
-                                Disposable disposable = getRestaurantDetailsFromGooglePlaceApi(placeId)
-                                        .subscribe(this::addRestaurantToFirebase);
-                            }
-                        });
-                emitter.setCancellable(listener::remove);
-            } else {
-                emitter.onComplete();
-            }
+            Set<String> requested = new HashSet<>();
+            CompositeDisposable requests = new CompositeDisposable();
+            ListenerRegistration listener = getRestaurantsCollection()
+                    .whereIn(FieldPath.documentId(), placeIds)
+                    // Also called when the cached snapshot is confirmed by the server without any change
+                    .addSnapshotListener(MetadataChanges.INCLUDE, (snapshot, error) -> {
+                        if (error != null)
+                            Log.e("RestaurantRepository", "watchRestaurants: ", error);
+                        if (snapshot == null) return;
+
+                        Set<String> stored = new HashSet<>();
+                        for (DocumentSnapshot document : snapshot.getDocuments()) {
+                            if (hasDetails(document)) stored.add(document.getId());
+                        }
+                        for (DocumentChange change : snapshot.getDocumentChanges()) {
+                            if (change.getType() != DocumentChange.Type.REMOVED && hasDetails(change.getDocument()))
+                                emitter.onNext(change.getDocument().toObject(Restaurant.class));
+                        }
+
+                        // The local cache may not know every stored restaurant yet,
+                        // the missing ones are only requested once the server has answered
+                        if (snapshot.getMetadata().isFromCache()) return;
+
+                        // The listener is called again once the missing restaurants are stored
+                        List<String> missing = new ArrayList<>();
+                        for (String placeId : placeIds) {
+                            if (!stored.contains(placeId) && requested.add(placeId)) missing.add(placeId);
+                        }
+                        if (!missing.isEmpty()) {
+                            requests.add(fetchAndStoreRestaurants(missing, priority)
+                                    .subscribe(() -> {}, throwable -> Log.e("RestaurantRepository", "watchRestaurants: ", throwable)));
+                        }
+                    });
+            emitter.setCancellable(() -> {
+                listener.remove();
+                requests.dispose();
+            });
         });
     }
 
+    /**
+     * @return the Ids of the restaurants missing from Firestore whose details request failed.
+     * Their watchers won't emit them until they are stored
+     */
+    public Observable<String> watchUnavailableRestaurants() {
+        return unavailableRestaurants;
+    }
+
+    public Observable<Restaurant> watchRestaurant(String placeId) {
+        return watchRestaurant(placeId, PRIORITY_NOW);
+    }
+
+    private Observable<Restaurant> watchRestaurant(String placeId, int priority) {
+        if (placeId == null) return Observable.empty();
+
+        return workspace.watchId()
+                .switchMap(id -> watchRestaurantDocument(placeId))
+                .doOnNext(document -> {
+                    // The listener is called again once the restaurant is stored
+                    if (!hasDetails(document)) {
+                        Disposable disposable = fetchAndStoreRestaurant(placeId, priority)
+                                .subscribe(restaurant -> {}, throwable -> Log.e("RestaurantRepository", "watchRestaurant: ", throwable));
+                    }
+                })
+                .filter(RestaurantRepository::hasDetails)
+                .map(document -> {
+                    Restaurant restaurant = document.toObject(Restaurant.class);
+                    return restaurant != null ? restaurant : new Restaurant();
+                });
+    }
+
+    // A single listener per restaurant document, shared by every subscriber
+    private Observable<DocumentSnapshot> watchRestaurantDocument(String placeId) {
+        DocumentReference reference = getRestaurantsCollection().document(placeId);
+        return listeners.share(reference.getPath(), () -> Observable.<DocumentSnapshot>create(emitter -> {
+            ListenerRegistration listener = reference
+                    .addSnapshotListener((document, error) -> {
+                        if (error != null)
+                            Log.e("RestaurantRepository", "watchRestaurant: ", error);
+                        if (document != null) emitter.onNext(document);
+                    });
+            emitter.setCancellable(listener::remove);
+        }));
+    }
+
+    /**
+     * @return the restaurants already read on this device. They come from the Firestore cache,
+     * the collection is never downloaded from the server
+     */
+    public Single<List<Restaurant>> getKnownRestaurants() {
+        return workspace.watchId().firstOrError().flatMap(id -> Single.<List<Restaurant>>create(emitter -> getRestaurantsCollection()
+                .get(Source.CACHE)
+                .addOnSuccessListener(query -> {
+                    List<Restaurant> restaurants = new ArrayList<>();
+                    for (DocumentSnapshot document : query.getDocuments()) {
+                        if (hasDetails(document)) restaurants.add(toRestaurant(document));
+                    }
+                    emitter.onSuccess(restaurants);
+                })
+                .addOnFailureListener(emitter::tryOnError)));
+    }
+
     public Single<Restaurant> getRestaurant(String placeId) {
-        return Single.create(emitter -> {
-            if (placeId != null && !placeId.equals("")) {
-                db.collection("restaurants")
-                        .document(placeId)
-                        .get()
+        return getRestaurant(placeId, PlaceFields.DETAILS);
+    }
+
+    /**
+     * Gets a restaurant from the Firestore cache if it is there, otherwise from the server,
+     * or from the Place Details API if it is not stored yet
+     *
+     * @param placeId the Id of the restaurant
+     * @param fields  the fields needed by the caller if the restaurant is requested to Places.
+     *                The restaurant is only stored in Firestore if they include every detail
+     * @return a Single
+     */
+    public Single<Restaurant> getRestaurant(String placeId, PlaceFields fields) {
+        // The server is only read if the cache doesn't hold the restaurant
+        return getRestaurant(placeId, fields, ReadPolicy.CACHE_THEN_SERVER).firstOrError();
+    }
+
+    /**
+     * Gets a restaurant from Firestore, or from the Place Details API if it is not stored yet
+     *
+     * @param placeId the Id of the restaurant
+     * @param fields  the fields needed by the caller if the restaurant is requested to Places.
+     *                The restaurant is only stored in Firestore if they include every detail
+     * @param policy  where the restaurant is read from
+     * @return an Observable of the cached restaurant and/or the restaurant of the server,
+     * read once the workspace of the user is known
+     */
+    public Observable<Restaurant> getRestaurant(String placeId, PlaceFields fields, ReadPolicy policy) {
+        if (placeId == null || placeId.isEmpty()) return Observable.empty();
+        return workspace.watchId().take(1).concatMap(id -> getWorkspaceRestaurant(placeId, fields, policy));
+    }
+
+    private Observable<Restaurant> getWorkspaceRestaurant(String placeId, PlaceFields fields, ReadPolicy policy) {
+        DocumentReference reference = getRestaurantsCollection().document(placeId);
+
+        Maybe<Restaurant> cached = Maybe.<DocumentSnapshot>create(emitter -> reference
+                        .get(Source.CACHE)
                         .addOnSuccessListener(document -> {
-                            if (document.exists()) {
-                                Restaurant restaurant = document.toObject(Restaurant.class);
-                                emitter.onSuccess(restaurant != null ? restaurant : new Restaurant());
-                            } else {
-                                Disposable disposable = getRestaurantDetailsFromGooglePlaceApi(placeId)
-                                        .subscribe(restaurant -> {
-                                            addRestaurantToFirebase(restaurant);
-                                            emitter.onSuccess(restaurant);
-                                        });
+                            if (hasDetails(document)) emitter.onSuccess(document);
+                            else emitter.onComplete();
+                        })
+                        // The document is not in the cache
+                        .addOnFailureListener(e -> emitter.onComplete()))
+                .map(this::toRestaurant)
+                .doOnEvent((restaurant, throwable) -> cacheHits.record(restaurant != null));
+        Single<Restaurant> server = Single.<DocumentSnapshot>create(emitter -> reference
+                        .get(Source.SERVER)
+                        .addOnSuccessListener(emitter::onSuccess)
+                        .addOnFailureListener(emitter::tryOnError))
+                .flatMap(document -> {
+                    if (hasDetails(document)) return Single.just(toRestaurant(document));
+                    return fields.containsAll(PlaceFields.DETAILS)
+                            ? fetchAndStoreRestaurant(placeId, PRIORITY_NOW)
+                            : getRestaurantDetailsFromGooglePlaceApi(placeId, fields, PRIORITY_NOW);
+                });
+
+        switch (policy) {
+            case CACHE_ONLY:
+                return cached.toObservable();
+            case SERVER_ONLY:
+                return server.toObservable();
+            default:
+                return Observable.defer(() -> {
+                    AtomicBoolean hit = new AtomicBoolean();
+                    // Offline, the cached restaurant is enough
+                    return cached.doOnSuccess(restaurant -> hit.set(true))
+                            .toObservable()
+                            .concatWith(server.toObservable()
+                                    .onErrorResumeNext(throwable -> hit.get() ? Observable.empty() : Observable.error(throwable)));
+                });
+        }
+    }
+
+    /**
+     * A restaurant chosen before it was stored only holds its workmates, its details are still missing
+     */
+    private static boolean hasDetails(DocumentSnapshot document) {
+        return document.contains("name");
+    }
+
+    private Restaurant toRestaurant(DocumentSnapshot document) {
+        Restaurant restaurant = document.toObject(Restaurant.class);
+        return restaurant != null ? restaurant : new Restaurant();
+    }
+
+    /**
+     * Requests the details of restaurants missing from Firestore, then stores them.
+     * Restaurants whose request fails are left out
+     *
+     * @param placeIds the Ids of the restaurants
+     * @param priority the priority of the requests
+     * @return a Completable
+     */
+    private Completable fetchAndStoreRestaurants(Collection<String> placeIds, int priority) {
+        return Observable.fromIterable(placeIds)
+                .flatMapCompletable(placeId -> fetchAndStoreRestaurant(placeId, priority)
+                        .ignoreElement()
+                        .doOnError(throwable -> Log.w("RestaurantRepository", "fetchAndStoreRestaurants: " + placeId, throwable))
+                        .onErrorComplete());
+    }
+
+    /**
+     * Requests the details of a restaurant missing from Firestore, then stores it.
+     * Concurrent callers for the same place share the same request, its single write and its result
+     *
+     * @param placeId  the Id of the restaurant
+     * @param priority the priority of the request, given by the first caller
+     * @return a Single shared by every caller until it terminates. The request is cancelled
+     * if every caller disposes of it before
+     */
+    private Single<Restaurant> fetchAndStoreRestaurant(String placeId, int priority) {
+        synchronized (pendingDetails) {
+            Single<Restaurant> pending = pendingDetails.get(placeId);
+            if (pending == null) {
+                pending = getRestaurantDetailsFromGooglePlaceApi(placeId, PlaceFields.DETAILS, priority)
+                        .doOnSuccess(this::addRestaurantToFirebase)
+                        .doOnError(throwable -> unavailableRestaurants.onNext(placeId))
+                        .doFinally(() -> {
+                            synchronized (pendingDetails) {
+                                pendingDetails.remove(placeId);
                             }
-                        });
+                        })
+                        .toObservable()
+                        .replay(1)
+                        .refCount()
+                        .singleOrError();
+                pendingDetails.put(placeId, pending);
             }
-        });
+            return pending;
+        }
     }
 
-    private Single<Restaurant> getRestaurantDetailsFromGooglePlaceApi(String placeId) {
-        return service.getPlaceInfo(placeId)
-                .subscribeOn(Schedulers.io())
+    // Each attempt and each hedge waits for its own slot and token of the scheduler
+    private Single<Restaurant> getRestaurantDetailsFromGooglePlaceApi(String placeId, PlaceFields fields, int priority) {
+        Single<GooglePlaceDetailResponse> call = service.getPlaceInfo(placeId, fields).subscribeOn(Schedulers.io());
+        return placesPolicy.execute("details", detailsScheduler.schedule(call, priority))
                 .observeOn(AndroidSchedulers.mainThread())
-                .timeout(10, TimeUnit.SECONDS)
                 .map(GooglePlaceDetailResponse::getResult);
     }
 
+    /**
+     * Each workspace keeps its own restaurants, with the likes and the workmates of its users
+     */
+    private CollectionReference getRestaurantsCollection() {
+        return workspace.collection(db, "restaurants");
+    }
+
     public void addRestaurantToFirebase(Restaurant restaurant) {
         if (restaurant.getId() != null) {
-            db.collection("restaurants")
+            getRestaurantsCollection()
                     .document(restaurant.getId())
-                    .set(restaurant);
+                    .set(restaurant, SetOptions.mergeFields(DETAILS_FIELDS));
         } else {
             Log.w("RestaurantRepository", "createRestaurant: Missing Id");
         }
     }
+
+    /**
+     * Adds or removes the like of a user, without rewriting the other likes or the rest of the restaurant
+     *
+     * @param liked true to add the like, false to remove it
+     */
+    public Task<Void> setLike(String restaurantId, String userId, boolean liked) {
+        return getRestaurantsCollection()
+                .document(restaurantId)
+                .update("likes", liked ? FieldValue.arrayUnion(userId) : FieldValue.arrayRemove(userId));
+    }
 }
@@ -0,0 +1,125 @@
+package com.fthiery.go4lunch.repository;
+
+import com.fthiery.go4lunch.utils.GeoHash;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Adapts the radius of the searches to the density of restaurants around them.
+ * The number of results of the last search made in an area gives its density, from which
+ * the radius giving the target number of results is computed: the number of results grows
+ * with the area of the search, i.e. with the square of its radius.
+ * Radii are multiples of the default radius by a power of √2, so that a few values are used
+ * and searches keep hitting the cache. The radius of the last search of each area is kept too,
+ * so that its cached results can be found again after the radius has been adapted.
+ */
+public class SearchRadiusController {
+
+    // Areas of about 5 km x 5 km
+    private static final int AREA_PRECISION = 5;
+    private static final int MAX_AREAS = 256;
+    // Nearby Search gives at most 3 pages of 20 results, more results are truncated
+    private static final int MAX_RESULTS = 60;
+    // The step of √2 between two radii doubles the area of the search
+    private static final double STEP = Math.sqrt(2);
+
+    private final int targetResults;
+    private final int defaultRadius;
+    private final int minSteps;
+    private final int maxSteps;
+    private final Map<String, Area> areas = new LinkedHashMap<String, Area>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Area> eldest) {
+            return size() > MAX_AREAS;
+        }
+    };
+
+    /**
+     * @param targetResults the number of results wanted for a search
+     * @param defaultRadius the radius of the first search in an area, in meters
+     * @param minRadius     the smallest radius, in meters
+     * @param maxRadius     the largest radius, in meters
+     */
+    public SearchRadiusController(int targetResults, int defaultRadius, int minRadius, int maxRadius) {
+        this.targetResults = targetResults;
+        this.defaultRadius = defaultRadius;
+        this.minSteps = (int) Math.ceil(Math.log((double) minRadius / defaultRadius) / Math.log(STEP) - 1e-9);
+        this.maxSteps = (int) Math.floor(Math.log((double) maxRadius / defaultRadius) / Math.log(STEP) + 1e-9);
+    }
+
+    /**
+     * @param location the center of the search
+     * @return the radius of a search at this location, in meters
+     */
+    public int radiusFor(LatLng location) {
+        Area area;
+        synchronized (areas) {
+            area = areas.get(areaOf(location));
+        }
+        return radiusOf(area != null ? area.steps : 0);
+    }
+
+    /**
+     * @param location the center of the search
+     * @return the radius of the last search recorded in this area, or the radius of a new search
+     */
+    public int lastRadiusFor(LatLng location) {
+        Area area;
+        synchronized (areas) {
+            area = areas.get(areaOf(location));
+        }
+        return area != null ? area.lastRadius : radiusOf(0);
+    }
+
+    /**
+     * Adapts the radius of the area of a search to its number of results.
+     * Only searches that received every page with a successful status give the density of an area:
+     * a failed search has no results, which would widen the radius to its maximum
+     *
+     * @param location the center of the search
+     * @param radius   the radius of the search, given by {@link #radiusFor}
+     * @param results  the number of results of the search
+     */
+    public void record(LatLng location, int radius, int results) {
+        int steps;
+        if (results >= MAX_RESULTS) {
+            // The real number of results is unknown, the radius is halved
+            steps = stepsOf(radius) - 2;
+        } else if (results == 0) {
+            steps = maxSteps;
+        } else {
+            // Each step doubles the area, hence the number of results
+            double areaRatio = (double) targetResults / results;
+            steps = stepsOf(radius) + (int) Math.round(Math.log(areaRatio) / Math.log(2));
+        }
+        steps = Math.max(minSteps, Math.min(maxSteps, steps));
+
+        synchronized (areas) {
+            areas.put(areaOf(location), new Area(steps, radius));
+        }
+    }
+
+    private int radiusOf(int steps) {
+        return (int) Math.round(defaultRadius * Math.pow(STEP, steps));
+    }
+
+    private int stepsOf(int radius) {
+        return (int) Math.round(Math.log((double) radius / defaultRadius) / Math.log(STEP));
+    }
+
+    private static String areaOf(LatLng location) {
+        return GeoHash.encode(location.latitude, location.longitude, AREA_PRECISION);
+    }
+
+    private static class Area {
+        final int steps;
+        final int lastRadius;
+
+        Area(int steps, int lastRadius) {
+            this.steps = steps;
+            this.lastRadius = lastRadius;
+        }
+    }
+}
@@ -1,45 +1,80 @@
 package com.fthiery.go4lunch.repository;
 
 import android.content.Context;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.firebase.ui.auth.AuthUI;
 import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
+import com.fthiery.go4lunch.utils.LunchDay;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Function;
 
 public class UserRepository {
 
+    /**
+     * The stats document holds the number of users, and the number of users who have chosen
+     * a restaurant on each day. It is updated in the same transaction as the users.
+     **/
+    private static final String USER_COUNT = "userCount";
+    private static final String CHOICES_BY_DAY = "choicesByDay";
+    // Number of users created or deleted, so that a count can tell whether the users changed meanwhile
+    private static final String USER_WRITES = "userWrites";
+    private static final int BACKFILL_ATTEMPTS = 5;
+
     private static volatile UserRepository instance;
     private final FirebaseFirestore firestore;
     private final FirebaseAuth firebaseAuth;
+    private final Workspace workspace;
+    private final ListenerRegistry listeners = new ListenerRegistry();
+    private final ChoiceJoin choiceJoin = new ChoiceJoin(this::watchUserProfile);
+    private final AtomicBoolean backfillingUserCount = new AtomicBoolean();
 
     public UserRepository() {
-        this(FirebaseFirestore.getInstance(), FirebaseAuth.getInstance());
+        this(FirebaseFirestore.getInstance(), FirebaseAuth.getInstance(), Workspace.getInstance());
     }
 
     public UserRepository(FirebaseFirestore firestore, FirebaseAuth firebaseAuth) {
+        this(firestore, firebaseAuth, new Workspace(firebaseAuth));
+    }
+
+    public UserRepository(FirebaseFirestore firestore, FirebaseAuth firebaseAuth, Workspace workspace) {
         this.firestore = firestore;
         this.firebaseAuth = firebaseAuth;
+        this.workspace = workspace;
     }
 
     public static UserRepository getInstance() {
@@ -55,108 +90,358 @@ public class UserRepository {
         }
     }
 
+    /**
+     * @return an Observable of every user of the workspace, with the restaurant chosen today
+     */
     public Observable<List<User>> watchAllUsers() {
-        // Observes users and updates the list of chosen restaurants
-        return Observable.create(emitter -> {
-            ListenerRegistration listener = getUsersCollection()
-                    .addSnapshotListener((collection, error) -> {
-                        if (error != null) emitter.onError(error);
-
-                        List<User> users = new ArrayList<>();
-                        if (collection != null)
-                            for (QueryDocumentSnapshot doc : collection)
-                                users.add(doc.toObject(User.class));
-                        emitter.onNext(users);
-                    });
-            emitter.setCancellable(listener::remove);
+        return Observable.defer(() -> {
+            Map<String, User> users = new LinkedHashMap<>();
+            return watchUserChanges().map(changes -> applyChanges(users, changes));
         });
     }
 
+    /**
+     * Reads the number of users of the workspace from its stats document, without downloading the users.
+     * The count follows the workspace when the user signs in
+     */
     public Observable<Integer> watchNumberOfUsers() {
-        return Observable.create(emitter -> {
-            ListenerRegistration listener = getUsersCollection()
-                    .addSnapshotListener((collection, error) -> {
-                        if (collection != null) emitter.onNext(collection.size());
+        return workspace.watchId()
+                .switchMap(id -> watchDocument(getStatsDocument()))
+                .doOnNext(document -> {
+                    if (!document.contains(USER_COUNT)) backfillUserCount();
+                })
+                .filter(document -> document.contains(USER_COUNT))
+                .map(document -> document.getLong(USER_COUNT).intValue())
+                .distinctUntilChanged();
+    }
+
+    /**
+     * Counts the users once, for a stats document created before the users
+     */
+    private void backfillUserCount() {
+        if (!backfillingUserCount.compareAndSet(false, true)) return;
+        backfillUserCount(BACKFILL_ATTEMPTS)
+                .addOnFailureListener(e -> Log.e("UserRepository", "backfillUserCount: ", e))
+                .addOnCompleteListener(task -> backfillingUserCount.set(false));
+    }
+
+    /**
+     * The users are counted outside of the transaction. If a user has been created or deleted meanwhile,
+     * the count is stale and the users are counted again
+     */
+    private Task<Void> backfillUserCount(int attempts) {
+        DocumentReference stats = getStatsDocument();
+        return stats.get(Source.SERVER)
+                .continueWithTask(statsTask -> {
+                    long writes = userWritesOf(statsTask.getResult());
+                    return getUsersCollection().get(Source.SERVER).continueWithTask(usersTask -> {
+                        int userCount = usersTask.getResult().size();
+                        return firestore.runTransaction(transaction -> {
+                            DocumentSnapshot current = transaction.get(stats);
+                            if (current.contains(USER_COUNT)) return true;
+                            if (userWritesOf(current) != writes) return false;
+
+                            Map<String, Object> data = new HashMap<>();
+                            data.put(USER_COUNT, userCount);
+                            transaction.set(stats, data, SetOptions.merge());
+                            return true;
+                        });
                     });
-            emitter.setCancellable(listener::remove);
-        });
+                })
+                .continueWithTask(task -> task.getResult() || attempts <= 1
+                        ? Tasks.<Void>forResult(null)
+                        : backfillUserCount(attempts - 1));
+    }
+
+    private static long userWritesOf(DocumentSnapshot stats) {
+        Long writes = stats.getLong(USER_WRITES);
+        return writes != null ? writes : 0;
     }
 
     /**
-     * Requests the users who have chosen to eat at restaurantId
+     * Requests the users who have chosen to eat at restaurantId today
      *
      * @param restaurantId the Id of the restaurant
      * @return an Observable
      */
     public Observable<List<User>> watchUsersEatingAt(String restaurantId) {
+        return Observable.defer(() -> {
+            Map<String, User> users = new LinkedHashMap<>();
+            return watchUserChangesEatingAt(restaurantId).map(changes -> applyChanges(users, changes));
+        });
+    }
+
+    /**
+     * @return an Observable of the workspace and the day whose choices are read, e.g. "example.com/2022-01-31"
+     */
+    private Observable<String> watchLunch() {
+        return Observable.combineLatest(workspace.watchId(), LunchDay.watchToday(), (id, day) -> id + "/" + day)
+                .distinctUntilChanged();
+    }
+
+    private static List<User> applyChanges(Map<String, User> users, List<UserChange> changes) {
+        for (UserChange change : changes) {
+            User user = change.getUser();
+            if (change.getType() == UserChange.Type.REMOVED) users.remove(user.getId());
+            else users.put(user.getId(), user);
+        }
+        return new ArrayList<>(users.values());
+    }
+
+    /**
+     * Watches the users, joined with the restaurant each of them has chosen today. The first emission
+     * adds every user, then each emission holds the users added, modified or removed by a snapshot of
+     * the users or of the choices. Only the changed documents are deserialized.
+     *
+     * @return an Observable of the changes of each snapshot
+     */
+    public Observable<List<UserChange>> watchUserChanges() {
+        return followLunch(lunch -> watchWorkspaceUserChanges());
+    }
+
+    private Observable<List<UserChange>> watchWorkspaceUserChanges() {
         return Observable.create(emitter -> {
-            ListenerRegistration listener = getUsersCollection()
-                    .whereEqualTo("chosenRestaurantId", restaurantId)
+            Map<String, User> users = new HashMap<>();
+            // The restaurant chosen today by each user
+            Map<String, String> choices = new HashMap<>();
+
+            ListenerRegistration usersListener = getUsersCollection()
                     .addSnapshotListener((collection, error) -> {
-                        if (error != null) emitter.onError(error);
+                        if (error != null) {
+                            emitter.tryOnError(error);
+                            return;
+                        }
+                        if (collection == null) return;
 
-                        List<User> users = new ArrayList<>();
-                        if (collection != null)
-                            for (QueryDocumentSnapshot doc : collection)
-                                users.add(doc.toObject(User.class));
-                        emitter.onNext(users);
+                        List<UserChange> changes = new ArrayList<>();
+                        for (DocumentChange change : collection.getDocumentChanges()) {
+                            QueryDocumentSnapshot document = change.getDocument();
+                            User user = document.toObject(User.class);
+                            user.setId(document.getId());
+                            // A choice stored on the user document by an older version is ignored
+                            user.setChosenRestaurantId(choices.get(user.getId()));
+
+                            User previous = change.getType() == DocumentChange.Type.REMOVED
+                                    ? users.remove(user.getId())
+                                    : users.put(user.getId(), user);
+                            String previousId = previous != null ? previous.getChosenRestaurantId() : null;
+                            changes.add(new UserChange(typeOf(change), user, previousId));
+                        }
+                        emitter.onNext(changes);
                     });
-            emitter.setCancellable(listener::remove);
+
+            ListenerRegistration choicesListener = getChoicesCollection(LunchDay.today())
+                    .addSnapshotListener((collection, error) -> {
+                        if (error != null) {
+                            emitter.tryOnError(error);
+                            return;
+                        }
+                        if (collection == null) return;
+
+                        List<UserChange> changes = new ArrayList<>();
+                        for (DocumentChange change : collection.getDocumentChanges()) {
+                            String userId = change.getDocument().getId();
+                            String restaurantId = change.getType() == DocumentChange.Type.REMOVED
+                                    ? null
+                                    : change.getDocument().getString("chosenRestaurantId");
+                            if (restaurantId != null) choices.put(userId, restaurantId);
+                            else choices.remove(userId);
+
+                            // Users not received yet get their choice when they are added
+                            User previous = users.get(userId);
+                            if (previous == null) continue;
+                            User user = new User(previous);
+                            user.setChosenRestaurantId(restaurantId);
+                            users.put(userId, user);
+                            changes.add(new UserChange(UserChange.Type.MODIFIED, user, previous.getChosenRestaurantId()));
+                        }
+                        if (!changes.isEmpty()) emitter.onNext(changes);
+                    });
+
+            emitter.setCancellable(() -> {
+                usersListener.remove();
+                choicesListener.remove();
+            });
         });
     }
 
-    public void setChosenRestaurant(String userId, String restaurantId) {
-        if (userId != null) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("chosenRestaurantId", restaurantId);
-            getUsersCollection().document(userId)
-                    .set(data, SetOptions.merge());
-        }
+    /**
+     * Watches the users eating at a restaurant today: a user choosing it is added, a user leaving it is removed.
+     * The choices of the restaurant are read from the shared index, joined with the documents of their users.
+     *
+     * @param restaurantId the Id of the restaurant
+     * @return an Observable of the changes of each snapshot, possibly empty
+     */
+    public Observable<List<UserChange>> watchUserChangesEatingAt(String restaurantId) {
+        return followLunch(lunch -> choiceJoin.join(watchLunchIndex(lunch)
+                .map(index -> index.getChoicesAt(restaurantId))
+                .distinctUntilChanged()));
     }
 
-    public Observable<List<String>> watchChosenRestaurants() {
-        return Observable.create(emitter -> {
-            ListenerRegistration listener = getUsersCollection()
-                    .whereNotEqualTo("chosenRestaurantId", null)
-                    .addSnapshotListener((collection, error) -> {
-                        List<String> chosenRestaurants = new ArrayList<>();
-                        if (collection != null)
-                            for (QueryDocumentSnapshot doc : collection) {
-                                String chosenRestaurantId = doc.get("chosenRestaurantId", String.class);
-                                if (!chosenRestaurants.contains(chosenRestaurantId))
-                                    chosenRestaurants.add(chosenRestaurantId);
-                            }
-                        emitter.onNext(chosenRestaurants);
+    /**
+     * Indexes the choices of the current workspace and day, with a single listener shared by every watcher.
+     * The same index is emitted after each snapshot, and is only read through its synchronized methods.
+     */
+    private Observable<LunchIndex> watchLunchIndex() {
+        return listeners.share("lunches/today/index", () -> watchLunch()
+                .switchMap(lunch -> Observable.defer(() -> {
+                    LunchIndex index = new LunchIndex(lunch);
+                    return watchChoiceChanges(getChoicesCollection(LunchDay.today())).map(changes -> {
+                        index.apply(changes);
+                        return index;
+                    });
+                })));
+    }
+
+    // The shared index may still be the one of the previous workspace or day, which is skipped
+    private Observable<LunchIndex> watchLunchIndex(String lunch) {
+        return watchLunchIndex().filter(index -> index.getLunch().equals(lunch));
+    }
+
+    /**
+     * Follows the workspace of the current user and the day of the lunch. When either changes, the users
+     * of the previous one are removed before those of the new one are added
+     *
+     * @param source watches the changes of the users of a lunch, with the choices of today
+     */
+    private Observable<List<UserChange>> followLunch(Function<String, Observable<List<UserChange>>> source) {
+        return Observable.defer(() -> {
+            Map<String, User> users = new HashMap<>();
+            return watchLunch()
+                    .switchMap(lunch -> {
+                        List<UserChange> removals = new ArrayList<>();
+                        for (User user : users.values())
+                            removals.add(new UserChange(UserChange.Type.REMOVED, user, user.getChosenRestaurantId()));
+                        return removals.isEmpty() ? source.apply(lunch) : source.apply(lunch).startWithItem(removals);
+                    })
+                    .doOnNext(changes -> {
+                        for (UserChange change : changes) {
+                            if (change.getType() == UserChange.Type.REMOVED) users.remove(change.getUser().getId());
+                            else users.put(change.getUser().getId(), change.getUser());
+                        }
                     });
-            emitter.setCancellable(listener::remove);
         });
     }
 
-    public Observable<String> watchChosenRestaurant(String userId) {
+    /**
+     * Watches the changes of a query on the choices of a day. A choice only holds the chosen restaurant,
+     * so the users of the changes only have an Id and a chosen restaurant Id
+     */
+    private Observable<List<UserChange>> watchChoiceChanges(Query query) {
         return Observable.create(emitter -> {
-            ListenerRegistration listener = getUsersCollection()
-                    .document(userId)
-                    .addSnapshotListener((document, error) -> {
-                        if (error != null) emitter.onError(error);
-                        String chosenRestaurantId = document.get("chosenRestaurantId", String.class);
-                        emitter.onNext(chosenRestaurantId != null ? chosenRestaurantId : "");
+            // The chosen restaurant of each user, to tell which changes move a user
+            Map<String, String> chosenRestaurantIds = new HashMap<>();
+            ListenerRegistration listener = query
+                    .addSnapshotListener((collection, error) -> {
+                        if (error != null) {
+                            emitter.tryOnError(error);
+                            return;
+                        }
+                        if (collection == null) return;
+
+                        List<UserChange> changes = new ArrayList<>();
+                        for (DocumentChange change : collection.getDocumentChanges()) {
+                            QueryDocumentSnapshot document = change.getDocument();
+                            User user = new User();
+                            user.setId(document.getId());
+                            user.setChosenRestaurantId(document.getString("chosenRestaurantId"));
+
+                            String previous = chosenRestaurantIds.get(user.getId());
+                            if (change.getType() == DocumentChange.Type.REMOVED)
+                                chosenRestaurantIds.remove(user.getId());
+                            else
+                                chosenRestaurantIds.put(user.getId(), user.getChosenRestaurantId());
+                            changes.add(new UserChange(typeOf(change), user, previous));
+                        }
+                        emitter.onNext(changes);
                     });
             emitter.setCancellable(listener::remove);
         });
     }
 
-    public Single<String> getChosenRestaurant(String userId) {
-        return Single.create(emitter -> {
-            getUsersCollection()
-                    .document(userId)
-                    .get()
-                    .addOnSuccessListener(document -> {
-                        String chosenRestaurantId = document.get("chosenRestaurantId", String.class);
-                        emitter.onSuccess(chosenRestaurantId != null ? chosenRestaurantId : "");
-                    });
+    private static UserChange.Type typeOf(DocumentChange change) {
+        switch (change.getType()) {
+            case ADDED:
+                return UserChange.Type.ADDED;
+            case REMOVED:
+                return UserChange.Type.REMOVED;
+            default:
+                return UserChange.Type.MODIFIED;
+        }
+    }
+
+    /**
+     * Sets the restaurant chosen today by the user. In the same transaction, the choice of the day is
+     * counted in the stats document, and the user is moved from the workmates of the previous restaurant
+     * to those of the new one.
+     *
+     * @param restaurantId the Id of the restaurant, or an empty String to cancel the choice
+     */
+    public Task<Void> setChosenRestaurant(String userId, String restaurantId) {
+        if (userId == null) return Tasks.forResult(null);
+
+        String today = LunchDay.today();
+        DocumentReference choice = getChoicesCollection(today).document(userId);
+        boolean choosing = restaurantId != null && !restaurantId.isEmpty();
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot previousChoice = transaction.get(choice);
+            String previousId = previousChoice.getString("chosenRestaurantId");
+            boolean chosen = previousId != null && !previousId.isEmpty();
+            if (chosen == choosing && (!chosen || previousId.equals(restaurantId))) return null;
+
+            // Every read of a transaction comes before its writes
+            DocumentSnapshot previous = chosen ? transaction.get(getRestaurantDocument(previousId)) : null;
+            DocumentSnapshot next = choosing ? transaction.get(getRestaurantDocument(restaurantId)) : null;
+
+            if (choosing) {
+                // The name and photo are read from the user, so that the choice never goes stale
+                Map<String, Object> data = new HashMap<>();
+                data.put("chosenRestaurantId", restaurantId);
+                transaction.set(choice, data);
+            } else {
+                transaction.delete(choice);
+            }
+            if (chosen != choosing)
+                transaction.set(getStatsDocument(), countChoice(today, choosing ? 1 : -1), SetOptions.merge());
+            if (previous != null) countWorkmate(transaction, previous, today, -1);
+            if (next != null) countWorkmate(transaction, next, today, 1);
+            return null;
+        });
+    }
+
+    /**
+     * Watches the number of users who have chosen each restaurant today. The first emission holds every
+     * chosen restaurant, then each emission only holds the restaurants whose count has changed.
+     *
+     * @return an Observable of counts by restaurant Id, 0 when nobody has chosen the restaurant anymore
+     */
+    public Observable<Map<String, Integer>> watchChosenRestaurants() {
+        return Observable.defer(() -> {
+            Map<String, Integer> counts = new HashMap<>();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return watchLunch().switchMap(this::watchLunchIndex)
+                    .map(index -> index.getChangedCounts(counts))
+                    .filter(changed -> first.getAndSet(false) || !changed.isEmpty());
         });
     }
 
+    /**
+     * @return an Observable of the restaurant chosen today by the user, or an empty String
+     */
+    public Observable<String> watchChosenRestaurant(String userId) {
+        return watchLunch().switchMap(lunch -> watchChosenRestaurant(lunch, userId));
+    }
+
+    private Observable<String> watchChosenRestaurant(String lunch, String userId) {
+        return watchLunchIndex(lunch)
+                .map(index -> index.getChosenRestaurantId(userId))
+                .distinctUntilChanged();
+    }
+
+    public Single<String> getChosenRestaurant(String userId) {
+        return watchChosenRestaurant(userId).firstOrError();
+    }
+
     @Nullable
     public String getCurrentUserId() {
         FirebaseUser user = firebaseAuth.getCurrentUser();
@@ -167,20 +452,95 @@ public class UserRepository {
         return AuthUI.getInstance().signOut(context);
     }
 
+    /**
+     * Deletes the documents of the user, then the account, which also signs the user out.
+     * The transaction reads from the server, so it has to succeed while the user is still signed in:
+     * if it fails, the account is kept and the returned Task fails
+     */
     public Task<Void> deleteUser(Context context) {
         String id = getCurrentUserId();
-        if (id != null) {
-            getUsersCollection()
-                    .document(id)
-                    .delete();
-        }
-        signOut(context);
-        return AuthUI.getInstance().delete(context);
+        Task<Void> documents = id != null ? deleteUserDocuments(id) : Tasks.forResult(null);
+        return documents
+                .addOnFailureListener(e -> Log.e("UserRepository", "deleteUser: ", e))
+                .continueWithTask(task -> task.isSuccessful()
+                        ? AuthUI.getInstance().delete(context)
+                        : Tasks.forException(task.getException()));
     }
 
-    // Get the Collection Reference
+    private Task<Void> deleteUserDocuments(String id) {
+        String today = LunchDay.today();
+        DocumentReference reference = getUsersCollection().document(id);
+        DocumentReference choice = getChoicesCollection(today).document(id);
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot user = transaction.get(reference);
+            DocumentSnapshot stats = transaction.get(getStatsDocument());
+            String chosenRestaurantId = transaction.get(choice).getString("chosenRestaurantId");
+            if (!user.exists()) return null;
+            boolean chosen = chosenRestaurantId != null && !chosenRestaurantId.isEmpty();
+            DocumentSnapshot restaurant = chosen ? transaction.get(getRestaurantDocument(chosenRestaurantId)) : null;
+
+            transaction.delete(reference);
+            transaction.delete(choice);
+            transaction.set(getStatsDocument(), countUser(stats.contains(USER_COUNT), -1), SetOptions.merge());
+            if (chosen) {
+                transaction.set(getStatsDocument(), countChoice(today, -1), SetOptions.merge());
+                countWorkmate(transaction, restaurant, today, -1);
+            }
+            return null;
+        });
+    }
+
+    // Get the Collection Reference of the users of the workspace
     private CollectionReference getUsersCollection() {
-        return firestore.collection("users");
+        return workspace.collection(firestore, "users");
+    }
+
+    /**
+     * The choices of a day, one document per user. Choices of the previous days are never read again
+     */
+    private CollectionReference getChoicesCollection(String day) {
+        return workspace.collection(firestore, "lunches").document(day).collection("choices");
+    }
+
+    private DocumentReference getStatsDocument() {
+        return workspace.collection(firestore, "stats").document("users");
+    }
+
+    private DocumentReference getRestaurantDocument(String restaurantId) {
+        return workspace.collection(firestore, "restaurants").document(restaurantId);
+    }
+
+    /**
+     * Adjusts the number of workmates eating at a restaurant on a day, and drops the counts of the previous days.
+     * A restaurant missing from Firestore is counted too, its details are merged in when it is stored.
+     */
+    private static void countWorkmate(Transaction transaction, DocumentSnapshot restaurant, String day, int delta) {
+        Object stored = restaurant.get(FieldPath.of("workmatesByDay", day));
+        int count = stored instanceof Number ? ((Number) stored).intValue() : 0;
+
+        Map<String, Object> workmatesByDay = new HashMap<>();
+        workmatesByDay.put(day, Math.max(count + delta, 0));
+        Map<String, Object> data = new HashMap<>();
+        data.put("workmatesByDay", workmatesByDay);
+        transaction.set(restaurant.getReference(), data, SetOptions.mergeFields("workmatesByDay"));
+    }
+
+    /**
+     * @param counted true if the users have been counted already, otherwise the backfill will count them
+     */
+    private static Map<String, Object> countUser(boolean counted, int delta) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(USER_WRITES, FieldValue.increment(1));
+        if (counted) data.put(USER_COUNT, FieldValue.increment(delta));
+        return data;
+    }
+
+    private static Map<String, Object> countChoice(String day, int delta) {
+        Map<String, Object> choices = new HashMap<>();
+        choices.put(day, FieldValue.increment(delta));
+        Map<String, Object> data = new HashMap<>();
+        data.put(CHOICES_BY_DAY, choices);
+        return data;
     }
 
     // Create User in Firestore
@@ -193,35 +553,106 @@ public class UserRepository {
             String uid = fbUser.getUid();
             String emailAddress = fbUser.getEmail();
 
-            createUser(new User(uid, username, emailAddress, urlPicture));
+            // The user is created in their workspace, once it is known
+            Disposable disposable = workspace.watchId()
+                    .firstElement()
+                    .subscribe(id -> {
+                        createUser(new User(uid, username, emailAddress, urlPicture));
+                        moveLegacyLikes(uid);
+                    });
         }
     }
 
+    /**
+     * Moves the likes of a user from the collections used before workspaces into their workspace, once:
+     * the legacy user document is deleted in the same batch. The legacy choice is not moved, it was never
+     * reset and doesn't tell the day it was made.
+     */
+    private void moveLegacyLikes(String userId) {
+        DocumentReference legacyUser = firestore.collection("users").document(userId);
+        legacyUser.get(Source.SERVER)
+                .continueWithTask(userTask -> {
+                    if (!userTask.getResult().exists()) return Tasks.<Void>forResult(null);
+                    return firestore.collection("restaurants")
+                            .whereArrayContains("likes", userId)
+                            .get(Source.SERVER)
+                            .continueWithTask(likesTask -> {
+                                WriteBatch batch = firestore.batch();
+                                for (QueryDocumentSnapshot restaurant : likesTask.getResult()) {
+                                    // The details of a restaurant are merged in when it is stored
+                                    Map<String, Object> data = new HashMap<>();
+                                    data.put("likes", FieldValue.arrayUnion(userId));
+                                    batch.set(getRestaurantDocument(restaurant.getId()), data, SetOptions.merge());
+                                }
+                                batch.delete(legacyUser);
+                                return batch.commit();
+                            });
+                })
+                .addOnFailureListener(e -> Log.e("UserRepository", "moveLegacyLikes: ", e));
+    }
+
     private void createUser(User user) {
-        // If the user doesn't exist in the database, add it
-        getUsersCollection()
-                .document(user.getId())
-                .get()
-                .addOnSuccessListener(document -> {
-                    if (!document.exists()) getUsersCollection().document(user.getId()).set(user);
-                });
+        // If the user doesn't exist in the database, add it and count it
+        DocumentReference reference = getUsersCollection().document(user.getId());
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot document = transaction.get(reference);
+            DocumentSnapshot stats = transaction.get(getStatsDocument());
+            if (document.exists()) return null;
+
+            transaction.set(reference, user);
+            transaction.set(getStatsDocument(), countUser(stats.contains(USER_COUNT), 1), SetOptions.merge());
+            return null;
+        }).addOnFailureListener(e -> Log.e("UserRepository", "createUser: ", e));
     }
 
     public Observable<User> watchCurrentUser() {
-        return watchUser(getCurrentUserId());
+        return watchLunch().switchMap(lunch -> watchWorkspaceUser(lunch, getCurrentUserId()));
     }
 
+    /**
+     * Watches a user, with the restaurant chosen today
+     */
     public Observable<User> watchUser(String userId) {
-        return Observable.create(emitter -> {
-            ListenerRegistration listener = getUsersCollection()
-                    .document(userId)
+        return watchLunch().switchMap(lunch -> watchWorkspaceUser(lunch, userId));
+    }
+
+    private Observable<User> watchWorkspaceUser(String lunch, String userId) {
+        return Observable.combineLatest(
+                watchUserDocument(userId).filter(DocumentSnapshot::exists),
+                watchChosenRestaurant(lunch, userId),
+                (document, chosenRestaurantId) -> {
+                    User user = document.toObject(User.class);
+                    if (user == null) user = new User();
+                    user.setChosenRestaurantId(chosenRestaurantId);
+                    return user;
+                });
+    }
+
+    /**
+     * Watches the profile of a user, without the chosen restaurant. A user without document only has an Id
+     */
+    private Observable<User> watchUserProfile(String userId) {
+        return watchUserDocument(userId).map(document -> {
+            User user = document.exists() ? document.toObject(User.class) : null;
+            if (user == null) user = new User();
+            user.setId(userId);
+            return user;
+        });
+    }
+
+    private Observable<DocumentSnapshot> watchUserDocument(String userId) {
+        return watchDocument(getUsersCollection().document(userId));
+    }
+
+    // A single listener per document, shared by every subscriber
+    private Observable<DocumentSnapshot> watchDocument(DocumentReference reference) {
+        return listeners.share(reference.getPath(), () -> Observable.<DocumentSnapshot>create(emitter -> {
+            ListenerRegistration listener = reference
                     .addSnapshotListener((document, error) -> {
-                        if (error != null) emitter.onError(error);
-                        User user = document != null ? document.toObject(User.class) : null;
-                        if (user != null)
-                            emitter.onNext(user);
+                        if (error != null) emitter.tryOnError(error);
+                        else if (document != null) emitter.onNext(document);
                     });
             emitter.setCancellable(listener::remove);
-        });
+        }));
     }
 }
@@ -0,0 +1,150 @@
+package com.fthiery.go4lunch.repository;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+
+/**
+ * The team of the current user. Users, choices and restaurants are stored under workspaces/{id},
+ * so that the listeners of a device only grow with the size of its team.
+ * The workspace of a user is given by the "workspace" claim of their account, which an administrator
+ * sets to invite them into a team. Without claim, it is the domain of their email address if it is
+ * verified and belongs to a company, otherwise the default workspace shared by every other user.
+ * firestore.rules grants each user access to the same workspace only.
+ */
+public class Workspace {
+
+    public static final String DEFAULT_ID = "default";
+    private static final String WORKSPACE_CLAIM = "workspace";
+
+    // Domains shared by unrelated users, which don't identify a team
+    private static final Set<String> PUBLIC_DOMAINS = new HashSet<>(Arrays.asList(
+            "gmail.com", "googlemail.com", "outlook.com", "outlook.fr", "hotmail.com", "hotmail.fr",
+            "live.com", "live.fr", "msn.com", "yahoo.com", "yahoo.fr", "icloud.com", "me.com", "mac.com",
+            "aol.com", "protonmail.com", "proton.me", "gmx.com", "gmx.fr", "orange.fr", "wanadoo.fr",
+            "free.fr", "sfr.fr", "laposte.net", "yandex.ru", "mail.ru"));
+
+    private static volatile Workspace instance;
+    private final FirebaseAuth firebaseAuth;
+    // The workspace claim of each user, or an empty String without claim
+    private final Map<String, String> claims = new ConcurrentHashMap<>();
+    // The Id set for this device, or an empty String
+    private final BehaviorSubject<String> override = BehaviorSubject.createDefault("");
+
+    public Workspace(FirebaseAuth firebaseAuth) {
+        this.firebaseAuth = firebaseAuth;
+    }
+
+    public static Workspace getInstance() {
+        Workspace result = instance;
+        if (result != null) {
+            return result;
+        }
+        synchronized (Workspace.class) {
+            if (instance == null) {
+                instance = new Workspace(FirebaseAuth.getInstance());
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * @return the Id set for this device, or the workspace of the current user.
+     * The claim of the user is only known once watchId() has read it
+     */
+    public String getId() {
+        String id = override.getValue();
+        if (id != null && !id.isEmpty()) return id;
+        FirebaseUser user = firebaseAuth.getCurrentUser();
+        if (user == null) return DEFAULT_ID;
+        return idOf(user.getEmail(), user.isEmailVerified(), claims.get(user.getUid()));
+    }
+
+    /**
+     * @param id the Id of the workspace, or null to use the one of the current user
+     */
+    public void setId(@Nullable String id) {
+        override.onNext(id != null ? id : "");
+    }
+
+    /**
+     * Nothing is emitted while nobody is signed in, so that the documents of a workspace are only
+     * read once its user is known
+     *
+     * @return an Observable of the Id, emitted again when another user signs in
+     */
+    public Observable<String> watchId() {
+        return override
+                .switchMap(id -> id.isEmpty() ? watchUserId() : Observable.just(id))
+                .distinctUntilChanged();
+    }
+
+    private Observable<String> watchUserId() {
+        return Observable.create(emitter -> {
+            FirebaseAuth.AuthStateListener listener = auth -> {
+                FirebaseUser user = auth.getCurrentUser();
+                if (user == null) return;
+                if (claims.containsKey(user.getUid())) {
+                    emitter.onNext(getId());
+                    return;
+                }
+                // The claims come with the Id token, cached by Firebase Auth
+                user.getIdToken(false)
+                        .addOnSuccessListener(result -> {
+                            Object claim = result.getClaims().get(WORKSPACE_CLAIM);
+                            claims.put(user.getUid(), claim instanceof String ? (String) claim : "");
+                            emitter.onNext(getId());
+                        })
+                        .addOnFailureListener(e -> emitter.onNext(getId()));
+            };
+            firebaseAuth.addAuthStateListener(listener);
+            emitter.setCancellable(() -> firebaseAuth.removeAuthStateListener(listener));
+        });
+    }
+
+    /**
+     * @return a collection of the workspace
+     */
+    public CollectionReference collection(FirebaseFirestore firestore, String name) {
+        return firestore.collection("workspaces").document(getId()).collection(name);
+    }
+
+    /**
+     * Must match workspaceId() in firestore.rules
+     *
+     * @param email         the email address of the user
+     * @param emailVerified whether the user has proven they own it
+     * @param claim         their workspace claim
+     * @return the claim, or the domain of a verified company address, or the default workspace
+     */
+    public static String idOf(@Nullable String email, boolean emailVerified, @Nullable String claim) {
+        if (claim != null && !claim.isEmpty()) return claim;
+        String domain = emailVerified ? companyDomainOf(email) : null;
+        return domain != null ? domain : DEFAULT_ID;
+    }
+
+    /**
+     * @param email an email address
+     * @return its domain, or null if it is missing or shared by unrelated users
+     */
+    @Nullable
+    public static String companyDomainOf(@Nullable String email) {
+        int at = email != null ? email.lastIndexOf('@') : -1;
+        if (at < 0) return null;
+        String domain = email.substring(at + 1).trim().toLowerCase(Locale.ROOT);
+        return domain.isEmpty() || PUBLIC_DOMAINS.contains(domain) ? null : domain;
+    }
+}
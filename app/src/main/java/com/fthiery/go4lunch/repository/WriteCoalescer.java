@@ -0,0 +1,116 @@
+package com.fthiery.go4lunch.repository;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.BiFunction;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Coalesces the writes of a document, keyed by its path. Only the last value submitted is written,
+ * once no other value has been submitted for a short quiet period. A burst of changes that ends
+ * on the stored value writes nothing.
+ */
+public class WriteCoalescer<T> {
+
+    private static final long DEFAULT_QUIET_PERIOD_MS = 1000;
+
+    private final long quietPeriodMs;
+    private final Scheduler scheduler;
+    private final BiFunction<String, T, Completable> writer;
+    private final Map<String, Pending<T>> pending = new HashMap<>();
+    // Number of writes in progress by key
+    private final Map<String, Integer> writing = new HashMap<>();
+
+    /**
+     * @param writer writes a value to the document of a key, and reports its errors
+     */
+    public WriteCoalescer(BiFunction<String, T, Completable> writer) {
+        this(DEFAULT_QUIET_PERIOD_MS, Schedulers.computation(), writer);
+    }
+
+    /**
+     * @param quietPeriodMs how long without submission before the last value is written
+     * @param scheduler     the scheduler of the quiet period
+     * @param writer        writes a value to the document of a key, and reports its errors
+     */
+    public WriteCoalescer(long quietPeriodMs, Scheduler scheduler, BiFunction<String, T, Completable> writer) {
+        this.quietPeriodMs = quietPeriodMs;
+        this.scheduler = scheduler;
+        this.writer = writer;
+    }
+
+    /**
+     * @param key    the path of the document
+     * @param value  the value to write
+     * @param stored the value stored before this change, only used by the first change of a burst
+     */
+    public synchronized void submit(String key, T value, T stored) {
+        Pending<T> previous = pending.get(key);
+        if (previous != null) previous.timer.dispose();
+
+        T base = previous != null ? previous.base : stored;
+        Disposable timer = scheduler.scheduleDirect(() -> flush(key), quietPeriodMs, TimeUnit.MILLISECONDS);
+        pending.put(key, new Pending<>(value, base, timer));
+    }
+
+    /**
+     * @return the value waiting to be written for a key, or null
+     */
+    public synchronized T getPending(String key) {
+        Pending<T> entry = pending.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * @return true while a value of the key waits or is being written
+     */
+    public synchronized boolean isPending(String key) {
+        return pending.containsKey(key) || writing.containsKey(key);
+    }
+
+    /**
+     * Writes every waiting value right away, e.g. when the screen is closed
+     */
+    public synchronized void flushAll() {
+        for (String key : new HashSet<>(pending.keySet())) flush(key);
+    }
+
+    private synchronized void flush(String key) {
+        Pending<T> entry = pending.remove(key);
+        if (entry == null) return;
+        entry.timer.dispose();
+        if (Objects.equals(entry.value, entry.base)) return;
+
+        Integer count = writing.get(key);
+        writing.put(key, count != null ? count + 1 : 1);
+        Completable.defer(() -> writer.apply(key, entry.value))
+                .doFinally(() -> finishWrite(key))
+                .onErrorComplete()
+                .subscribe();
+    }
+
+    private synchronized void finishWrite(String key) {
+        int count = writing.get(key) - 1;
+        if (count > 0) writing.put(key, count);
+        else writing.remove(key);
+    }
+
+    private static class Pending<T> {
+        final T value;
+        final T base;
+        final Disposable timer;
+
+        Pending(T value, T base, Disposable timer) {
+            this.value = value;
+            this.base = base;
+            this.timer = timer;
+        }
+    }
+}
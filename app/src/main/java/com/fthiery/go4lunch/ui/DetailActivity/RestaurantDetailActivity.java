@@ -99,7 +99,10 @@ public class RestaurantDetailActivity extends AppCompatActivity {
         setRating(restaurant.getRating());
         setLikeIcon(restaurant);
 
-        binding.actionLike.setOnClickListener(view -> viewModel.toggleLike(viewModel.getUserId(), restaurant));
+        binding.actionLike.setOnClickListener(view -> {
+            viewModel.toggleLike(viewModel.getUserId(), restaurant);
+            setLikeIcon(restaurant);
+        });
 
         binding.restaurantDetailFab.setOnClickListener(view -> {
             viewModel.toggleChosenRestaurant(viewModel.getUserId(), restaurant.getId());
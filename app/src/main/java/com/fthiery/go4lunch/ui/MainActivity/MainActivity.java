@@ -157,13 +157,13 @@ public class MainActivity extends AppCompatActivity {
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
-                viewModel.getRestaurants(query);
+                viewModel.submitQuery(query);
                 return false;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                viewModel.getRestaurants(newText);
+                viewModel.setQuery(newText);
                 return false;
             }
         });
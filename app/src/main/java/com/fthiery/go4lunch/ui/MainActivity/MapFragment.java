@@ -75,6 +75,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         public void onLocationResult(@NonNull LocationResult locationResult) {
             super.onLocationResult(locationResult);
             Location newLocation = locationResult.getLastLocation();
+            viewModel.updateMovement(newLocation);
             if (lastLocation == null || newLocation.distanceTo(lastLocation) > 5) {
                 viewModel.setLocation(newLocation);
                 lastLocation = locationResult.getLastLocation();
@@ -133,7 +134,12 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         // Initialize the Cluster Manager
         clusterManager = new ClusterManager<>(requireContext(), googleMap);
         clusterManager.setRenderer(new CustomClusterRenderer(requireContext(), googleMap, clusterManager));
-        googleMap.setOnCameraIdleListener(clusterManager);
+        googleMap.setOnCameraIdleListener(() -> {
+            clusterManager.onCameraIdle();
+            // Only the regions reached by the user are searched, not the ones framing the results
+            if (!cameraAutomaticMode)
+                viewModel.setVisibleRegion(googleMap.getProjection().getVisibleRegion().latLngBounds);
+        });
         googleMap.setOnMarkerClickListener(clusterManager);
 
         // When moving the camera manually, put it in manual mode and display the FAB
@@ -10,6 +10,7 @@ import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -22,6 +23,7 @@ import com.bumptech.glide.request.target.CustomTarget;
 import com.bumptech.glide.request.transition.Transition;
 import com.fthiery.go4lunch.R;
 import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.repository.PlaceFields;
 import com.fthiery.go4lunch.repository.RestaurantRepository;
 import com.fthiery.go4lunch.repository.UserRepository;
 import com.fthiery.go4lunch.ui.DetailActivity.RestaurantDetailActivity;
@@ -55,12 +57,13 @@ public class NotificationReceiver extends BroadcastReceiver {
 
             String userId = userRepository.getCurrentUserId();
             disposables.add(userRepository.getChosenRestaurant(userId).subscribe(restaurantId -> {
+                if (restaurantId.isEmpty()) return;
 
                 // Build notification based on Intent
                 NotificationCompat.Builder notification = new NotificationCompat.Builder(context, "Default")
                         .setSmallIcon(R.drawable.logo);
 
-                disposables.add(restaurantRepository.getRestaurant(restaurantId).subscribe(restaurant -> {
+                disposables.add(restaurantRepository.getRestaurant(restaurantId, PlaceFields.SUMMARY).subscribe(restaurant -> {
                     // When the data is loaded, build the notification
                     if (restaurant != null) {
                         notification.setContentTitle(String.format(context.getString(R.string.you_are_eating_at), restaurant.getName()));
@@ -115,7 +118,7 @@ public class NotificationReceiver extends BroadcastReceiver {
                             disposables.clear();
                         }));
                     }
-                }));
+                }, throwable -> Log.e("NotificationReceiver", "getRestaurant: ", throwable)));
             }));
         }
     }
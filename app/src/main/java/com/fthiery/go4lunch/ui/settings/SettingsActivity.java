@@ -1,8 +1,10 @@
 package com.fthiery.go4lunch.ui.settings;
 
+import android.app.Activity;
 import android.content.DialogInterface;
 import android.os.Bundle;
 import android.view.MenuItem;
+import android.widget.Toast;
 
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AlertDialog;
@@ -68,8 +70,12 @@ public class SettingsActivity extends AppCompatActivity {
                                 .setPositiveButton(R.string.delete_acount_dialog_confirm, new DialogInterface.OnClickListener() {
                                     @Override
                                     public void onClick(DialogInterface dialogInterface, int i) {
-                                        viewModel.deleteUser(requireContext());
-                                        requireActivity().finish();
+                                        // The account is kept if its data could not be deleted
+                                        Activity activity = requireActivity();
+                                        viewModel.deleteUser(activity)
+                                                .addOnSuccessListener(activity, unused -> activity.finish())
+                                                .addOnFailureListener(activity, e -> Toast.makeText(activity,
+                                                        R.string.delete_account_failed, Toast.LENGTH_LONG).show());
                                     }
                                 })
                                 .setNegativeButton(R.string.delete_acount_dialog_cancel, new DialogInterface.OnClickListener() {
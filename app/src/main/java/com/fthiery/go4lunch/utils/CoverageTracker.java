@@ -0,0 +1,100 @@
+package com.fthiery.go4lunch.utils;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps track of the parts of the map already searched, as geohash cells.
+ * A cell is covered once it lies entirely inside the circle of a search.
+ */
+public class CoverageTracker {
+
+    private final int precision;
+    private final Set<String> covered = new HashSet<>();
+
+    /**
+     * @param precision the number of characters of the geohashes of the cells
+     */
+    public CoverageTracker(int precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Marks the cells inside the circle of a search as covered, and the cell of its center
+     *
+     * @param center the center of the search
+     * @param radius the radius of the search, in meters
+     * @return the cells newly covered
+     */
+    public synchronized Set<String> cover(LatLng center, double radius) {
+        Set<String> cells = new HashSet<>();
+        String centerCell = GeoHash.encode(center.latitude, center.longitude, precision);
+        if (covered.add(centerCell)) cells.add(centerCell);
+
+        LatLng south = SphericalUtil.computeOffset(center, radius, 180);
+        LatLng north = SphericalUtil.computeOffset(center, radius, 0);
+        LatLng west = SphericalUtil.computeOffset(center, radius, 270);
+        LatLng east = SphericalUtil.computeOffset(center, radius, 90);
+
+        for (String cell : GeoHash.cellsIn(south.latitude, west.longitude, north.latitude, east.longitude, precision)) {
+            if (!covered.contains(cell) && isInside(cell, center, radius)) {
+                covered.add(cell);
+                cells.add(cell);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Marks cells as not covered, e.g. when their search failed
+     */
+    public synchronized void forget(Collection<String> cells) {
+        covered.removeAll(cells);
+    }
+
+    public synchronized void clear() {
+        covered.clear();
+    }
+
+    /**
+     * @return true if the cell of the point is covered
+     */
+    public synchronized boolean isCovered(LatLng point) {
+        return covered.contains(GeoHash.encode(point.latitude, point.longitude, precision));
+    }
+
+    /**
+     * @return the center of the uncovered cell of the area closest to the target, or null if the area is covered
+     */
+    public synchronized LatLng nearestUncovered(LatLng southwest, LatLng northeast, LatLng target) {
+        LatLng nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+
+        for (String cell : GeoHash.cellsIn(southwest.latitude, southwest.longitude, northeast.latitude, northeast.longitude, precision)) {
+            if (covered.contains(cell)) continue;
+            double[] bounds = GeoHash.bounds(cell);
+            LatLng center = new LatLng((bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2);
+            double distance = SphericalUtil.computeDistanceBetween(center, target);
+            if (distance < nearestDistance) {
+                nearest = center;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static boolean isInside(String cell, LatLng center, double radius) {
+        double[] bounds = GeoHash.bounds(cell);
+        for (int lat = 0; lat <= 2; lat += 2) {
+            for (int lng = 1; lng <= 3; lng += 2) {
+                if (SphericalUtil.computeDistanceBetween(center, new LatLng(bounds[lat], bounds[lng])) > radius)
+                    return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+package com.fthiery.go4lunch.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class GeoHash {
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final int MAX_PRECISION = 12;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private GeoHash() {
+    }
+
+    /**
+     * Encodes a position into a geohash
+     *
+     * @param latitude  the latitude of the position
+     * @param longitude the longitude of the position
+     * @param precision the number of characters of the geohash
+     * @return the geohash of the cell containing the position
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int index = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude >= mid) {
+                    index = index * 2 + 1;
+                    minLng = mid;
+                } else {
+                    index = index * 2;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    index = index * 2 + 1;
+                    minLat = mid;
+                } else {
+                    index = index * 2;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(index));
+                bit = 0;
+                index = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Decodes a geohash into the bounds of its cell
+     *
+     * @param hash a geohash
+     * @return the south, west, north and east bounds of the cell, in degrees
+     */
+    public static double[] bounds(String hash) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        boolean evenBit = true;
+
+        for (int i = 0; i < hash.length(); i++) {
+            int index = BASE32.indexOf(hash.charAt(i));
+            if (index < 0) throw new IllegalArgumentException("Invalid geohash: " + hash);
+
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean set = ((index >> bit) & 1) == 1;
+                if (evenBit) {
+                    double mid = (minLng + maxLng) / 2;
+                    if (set) minLng = mid;
+                    else maxLng = mid;
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (set) minLat = mid;
+                    else maxLat = mid;
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[]{minLat, minLng, maxLat, maxLng};
+    }
+
+    /**
+     * Lists the cells intersecting an area
+     *
+     * @param south     the southern bound of the area
+     * @param west      the western bound of the area
+     * @param north     the northern bound of the area
+     * @param east      the eastern bound of the area
+     * @param precision the number of characters of the geohashes
+     * @return the geohashes of the cells, from south-west to north-east
+     */
+    public static List<String> cellsIn(double south, double west, double north, double east, int precision) {
+        double latSpan = 180 / Math.pow(2, precision * 5 / 2);
+        double lngSpan = 360 / Math.pow(2, (precision * 5 + 1) / 2);
+        Set<String> cells = new LinkedHashSet<>();
+
+        for (double lat = south; ; lat += latSpan) {
+            double latitude = Math.min(lat, north);
+            for (double lng = west; ; lng += lngSpan) {
+                cells.add(encode(latitude, Math.min(lng, east), precision));
+                if (lng >= east) break;
+            }
+            if (lat >= north) break;
+        }
+        return new ArrayList<>(cells);
+    }
+
+    /**
+     * Gives the largest cell size small enough for a search of the given radius.
+     * A device moving inside such a cell stays close to the center of the search.
+     *
+     * @param radius the radius of the search in meters
+     * @return the number of characters of the geohash
+     */
+    public static int precisionFor(int radius) {
+        for (int precision = 1; precision < MAX_PRECISION; precision++) {
+            if (cellSize(precision) <= radius / 4.0) return precision;
+        }
+        return MAX_PRECISION;
+    }
+
+    /**
+     * @param precision the number of characters of the geohash
+     * @return the largest side of a cell at the equator, in meters
+     */
+    public static double cellSize(int precision) {
+        int lngBits = (precision * 5 + 1) / 2;
+        int latBits = precision * 5 / 2;
+        double lngSpan = 360 / Math.pow(2, lngBits);
+        double latSpan = 180 / Math.pow(2, latBits);
+        return Math.max(lngSpan, latSpan) * METERS_PER_DEGREE;
+    }
+}
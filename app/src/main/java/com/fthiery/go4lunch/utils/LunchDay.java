@@ -0,0 +1,44 @@
+package com.fthiery.go4lunch.utils;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Observable;
+
+/**
+ * Choices of restaurant are made for one day, identified by its date formatted as yyyy-MM-dd
+ */
+public class LunchDay {
+
+    public static String today() {
+        return format(new Date());
+    }
+
+    /**
+     * @return an Observable of the current day, emitted again after each midnight
+     */
+    public static Observable<String> watchToday() {
+        return Observable.defer(() -> Observable.just(today())
+                        .concatWith(Observable.timer(millisUntilTomorrow(), TimeUnit.MILLISECONDS).ignoreElements()))
+                .repeat()
+                .distinctUntilChanged();
+    }
+
+    // A second after midnight, so that the new day has begun
+    private static long millisUntilTomorrow() {
+        Calendar tomorrow = Calendar.getInstance();
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        tomorrow.set(Calendar.HOUR_OF_DAY, 0);
+        tomorrow.set(Calendar.MINUTE, 0);
+        tomorrow.set(Calendar.SECOND, 1);
+        tomorrow.set(Calendar.MILLISECOND, 0);
+        return Math.max(0, tomorrow.getTimeInMillis() - System.currentTimeMillis());
+    }
+
+    public static String format(Date date) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(date);
+    }
+}
@@ -0,0 +1,77 @@
+package com.fthiery.go4lunch.utils;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import java.util.ArrayDeque;
+
+/**
+ * Estimates the speed and heading of the user from the last location fixes,
+ * to predict where the user will be
+ */
+public class MovementEstimator {
+
+    private static final int MAX_FIXES = 5;
+    private static final long MAX_FIX_AGE_MS = 60_000;
+    // Below this speed, the movement is GPS noise (m/s)
+    private static final double MIN_SPEED = 0.5;
+
+    private final ArrayDeque<Fix> fixes = new ArrayDeque<>();
+
+    /**
+     * @param position the position of the fix
+     * @param timeMs   the time of the fix, in milliseconds
+     */
+    public synchronized void addFix(LatLng position, long timeMs) {
+        Fix last = fixes.peekLast();
+        if (last != null && timeMs <= last.time) return;
+
+        fixes.addLast(new Fix(position, timeMs));
+        while (fixes.size() > MAX_FIXES || timeMs - fixes.peekFirst().time > MAX_FIX_AGE_MS) {
+            fixes.removeFirst();
+        }
+    }
+
+    /**
+     * @return the mean speed over the last fixes, in meters per second
+     */
+    public synchronized double getSpeed() {
+        if (fixes.size() < 2) return 0;
+        Fix first = fixes.peekFirst();
+        Fix last = fixes.peekLast();
+        return SphericalUtil.computeDistanceBetween(first.position, last.position) * 1000 / (last.time - first.time);
+    }
+
+    /**
+     * @return the heading over the last fixes, in degrees clockwise from north
+     */
+    public synchronized double getHeading() {
+        if (fixes.size() < 2) return 0;
+        return SphericalUtil.computeHeading(fixes.peekFirst().position, fixes.peekLast().position);
+    }
+
+    public synchronized boolean isMoving() {
+        return getSpeed() >= MIN_SPEED;
+    }
+
+    /**
+     * @param aheadMs     how far in the future the position is predicted
+     * @param maxDistance the maximum distance from the last fix, in meters
+     * @return the predicted position, or null if the user is not moving
+     */
+    public synchronized LatLng predict(long aheadMs, double maxDistance) {
+        if (!isMoving()) return null;
+        double distance = Math.min(maxDistance, getSpeed() * aheadMs / 1000);
+        return SphericalUtil.computeOffset(fixes.peekLast().position, distance, getHeading());
+    }
+
+    private static class Fix {
+        final LatLng position;
+        final long time;
+
+        Fix(LatLng position, long time) {
+            this.position = position;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.fthiery.go4lunch.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory search index over the words of names and addresses.
+ * Words are found by prefix through a trie, and with small typos through their trigrams.
+ * Case and accents are ignored.
+ */
+public class RestaurantSearchIndex {
+
+    private static final int EXACT_SCORE = 3;
+    private static final int PREFIX_SCORE = 2;
+    private static final int FUZZY_SCORE = 1;
+
+    private final TrieNode root = new TrieNode();
+    // Trigram -> words containing it
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    // Word -> ids of the entries containing it
+    private final Map<String, Set<String>> idsByWord = new HashMap<>();
+    // Id -> its words, in the order of insertion of the ids
+    private final Map<String, Set<String>> wordsById = new LinkedHashMap<>();
+
+    /**
+     * Adds an entry to the index, or replaces it
+     *
+     * @param id    the id of the entry
+     * @param texts the texts under which the entry is found, e.g. its name and address
+     */
+    public synchronized void add(String id, String... texts) {
+        remove(id);
+
+        Set<String> words = new HashSet<>();
+        for (String text : texts) words.addAll(tokenize(text));
+        wordsById.put(id, words);
+
+        for (String word : words) {
+            Set<String> ids = idsByWord.get(word);
+            if (ids == null) {
+                ids = new HashSet<>();
+                idsByWord.put(word, ids);
+                root.insert(word);
+                for (String trigram : trigramsOf(word)) {
+                    Set<String> trigramWords = trigrams.get(trigram);
+                    if (trigramWords == null) {
+                        trigramWords = new HashSet<>();
+                        trigrams.put(trigram, trigramWords);
+                    }
+                    trigramWords.add(word);
+                }
+            }
+            ids.add(id);
+        }
+    }
+
+    public synchronized void remove(String id) {
+        Set<String> words = wordsById.remove(id);
+        if (words == null) return;
+
+        for (String word : words) {
+            Set<String> ids = idsByWord.get(word);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByWord.remove(word);
+                root.delete(word, 0);
+                for (String trigram : trigramsOf(word)) {
+                    Set<String> trigramWords = trigrams.get(trigram);
+                    trigramWords.remove(word);
+                    if (trigramWords.isEmpty()) trigrams.remove(trigram);
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return wordsById.size();
+    }
+
+    /**
+     * Every word of the query must match a word of the entry, either exactly,
+     * as a prefix, or with a small typo
+     *
+     * @param query the text typed by the user
+     * @param limit the maximum number of ids returned
+     * @return the ids of the matching entries, best matches first
+     */
+    public synchronized List<String> search(String query, int limit) {
+        List<String> queryWords = tokenize(query);
+        if (queryWords.isEmpty()) return Collections.emptyList();
+
+        Map<String, Integer> scores = null;
+        for (String queryWord : queryWords) {
+            Map<String, Integer> wordScores = scoreIds(queryWord);
+            if (scores == null) {
+                scores = wordScores;
+            } else {
+                Map<String, Integer> intersection = new HashMap<>();
+                for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+                    Integer score = wordScores.get(entry.getKey());
+                    if (score != null) intersection.put(entry.getKey(), entry.getValue() + score);
+                }
+                scores = intersection;
+            }
+            if (scores.isEmpty()) return Collections.emptyList();
+        }
+
+        // Ties keep the order of insertion
+        List<String> ids = new ArrayList<>();
+        for (String id : wordsById.keySet()) if (scores.containsKey(id)) ids.add(id);
+        Map<String, Integer> finalScores = scores;
+        Collections.sort(ids, (left, right) -> finalScores.get(right) - finalScores.get(left));
+
+        return ids.size() > limit ? new ArrayList<>(ids.subList(0, limit)) : ids;
+    }
+
+    // Best score of each entry for one word of the query
+    private Map<String, Integer> scoreIds(String queryWord) {
+        Map<String, Integer> scores = new HashMap<>();
+
+        for (String word : root.wordsStartingWith(queryWord)) {
+            score(scores, word, word.equals(queryWord) ? EXACT_SCORE : PREFIX_SCORE);
+        }
+
+        int maxTypos = maxTypos(queryWord);
+        if (maxTypos > 0) {
+            for (String word : fuzzyCandidates(queryWord)) {
+                // A typo in a word still being typed is compared with the beginning of the word
+                String prefix = word.length() > queryWord.length() ? word.substring(0, queryWord.length()) : word;
+                if (editDistance(queryWord, word) <= maxTypos || editDistance(queryWord, prefix) <= maxTypos)
+                    score(scores, word, FUZZY_SCORE);
+            }
+        }
+        return scores;
+    }
+
+    private void score(Map<String, Integer> scores, String word, int score) {
+        for (String id : idsByWord.get(word)) {
+            Integer previous = scores.get(id);
+            if (previous == null || previous < score) scores.put(id, score);
+        }
+    }
+
+    // Words sharing at least one trigram with the query word
+    private Set<String> fuzzyCandidates(String queryWord) {
+        Set<String> candidates = new HashSet<>();
+        for (String trigram : trigramsOf(queryWord)) {
+            Set<String> words = trigrams.get(trigram);
+            if (words != null) candidates.addAll(words);
+        }
+        return candidates;
+    }
+
+    private static int maxTypos(String word) {
+        if (word.length() < 4) return 0;
+        if (word.length() < 8) return 1;
+        return 2;
+    }
+
+    // Trigrams of the word padded at its start, so that its first letters weigh more
+    private static Set<String> trigramsOf(String word) {
+        String padded = "  " + word;
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) result.add(padded.substring(i, i + 3));
+        return result;
+    }
+
+    // Levenshtein distance, with adjacent transpositions counting as one edit
+    static int editDistance(String left, String right) {
+        int[][] d = new int[left.length() + 1][right.length() + 1];
+        for (int i = 0; i <= left.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= right.length(); j++) d[0][j] = j;
+
+        for (int i = 1; i <= left.length(); i++) {
+            for (int j = 1; j <= right.length(); j++) {
+                int cost = left.charAt(i - 1) == right.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && left.charAt(i - 1) == right.charAt(j - 2) && left.charAt(i - 2) == right.charAt(j - 1))
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+            }
+        }
+        return d[left.length()][right.length()];
+    }
+
+    /**
+     * @return the words of the text, lower case and without accents
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private boolean isWord = false;
+
+        void insert(String word) {
+            TrieNode node = this;
+            for (int i = 0; i < word.length(); i++) {
+                TrieNode child = node.children.get(word.charAt(i));
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(word.charAt(i), child);
+                }
+                node = child;
+            }
+            node.isWord = true;
+        }
+
+        // Returns true when this node can be removed from its parent
+        boolean delete(String word, int depth) {
+            if (depth == word.length()) {
+                isWord = false;
+            } else {
+                TrieNode child = children.get(word.charAt(depth));
+                if (child != null && child.delete(word, depth + 1)) children.remove(word.charAt(depth));
+            }
+            return !isWord && children.isEmpty();
+        }
+
+        List<String> wordsStartingWith(String prefix) {
+            List<String> words = new ArrayList<>();
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) node = node.children.get(prefix.charAt(i));
+            if (node != null) node.collect(new StringBuilder(prefix), words);
+            return words;
+        }
+
+        private void collect(StringBuilder word, List<String> words) {
+            if (isWord) words.add(word.toString());
+            for (Map.Entry<Character, TrieNode> child : children.entrySet()) {
+                word.append(child.getKey());
+                child.getValue().collect(word, words);
+                word.setLength(word.length() - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.fthiery.go4lunch.utils;
+
+/**
+ * Rate limiter allowing bursts of up to capacity operations, then a steady rate
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param capacity        the maximum number of tokens, i.e. the size of a burst
+     * @param tokensPerSecond the rate at which tokens are added
+     */
+    public TokenBucket(int capacity, double tokensPerSecond) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if one is available
+     *
+     * @return 0 if a token was taken, otherwise the delay in nanoseconds before one is available
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+}
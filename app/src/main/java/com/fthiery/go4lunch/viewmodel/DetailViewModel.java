@@ -1,19 +1,25 @@
 package com.fthiery.go4lunch.viewmodel;
 
+import android.util.Log;
+
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
 import com.fthiery.go4lunch.model.Restaurant;
 import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
 import com.fthiery.go4lunch.repository.RestaurantRepository;
 import com.fthiery.go4lunch.repository.UserRepository;
+import com.fthiery.go4lunch.repository.WriteCoalescer;
+import com.google.android.gms.tasks.Task;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 
@@ -22,6 +28,11 @@ public class DetailViewModel extends ViewModel {
     private final UserRepository userRepository;
     private final RestaurantRepository restaurantRepository;
     private final CompositeDisposable disposables = new CompositeDisposable();
+    private final MutableLiveData<String> chosenRestaurant = new MutableLiveData<>();
+
+    // Taps on the FAB and on the like button update the screen right away, the last state is written once they stop
+    private final WriteCoalescer<String> choiceWrites;
+    private final WriteCoalescer<Boolean> likeWrites;
 
     public DetailViewModel() {
         this(UserRepository.getInstance(), RestaurantRepository.getInstance());
@@ -31,6 +42,21 @@ public class DetailViewModel extends ViewModel {
         super();
         this.userRepository = userRepository;
         this.restaurantRepository = restaurantRepository;
+        this.choiceWrites = new WriteCoalescer<>((userId, restaurantId) ->
+                complete(userRepository.setChosenRestaurant(userId, restaurantId))
+                        .doOnError(throwable -> {
+                            Log.e("DetailViewModel", "setChosenRestaurant: ", throwable);
+                            disposables.add(userRepository.getChosenRestaurant(userId).subscribe(chosenRestaurant::postValue));
+                        }));
+        this.likeWrites = new WriteCoalescer<>((restaurantId, liked) ->
+                complete(restaurantRepository.setLike(restaurantId, getUserId(), liked))
+                        .doOnError(throwable -> Log.e("DetailViewModel", "setLike: ", throwable)));
+    }
+
+    private static Completable complete(Task<Void> task) {
+        return Completable.create(emitter -> task
+                .addOnSuccessListener(result -> emitter.onComplete())
+                .addOnFailureListener(emitter::tryOnError));
     }
 
     public LiveData<Restaurant> watchRestaurantDetails(String id) {
@@ -39,12 +65,21 @@ public class DetailViewModel extends ViewModel {
         disposables.add(
                 restaurantRepository
                         .watchRestaurant(id)
+                        .map(this::applyPendingLike)
                         .flatMap(this::updateRating)
                         .subscribe(restaurantLiveData::postValue));
 
         return restaurantLiveData;
     }
 
+    // A like waiting to be written wins over the stored likes
+    private Restaurant applyPendingLike(Restaurant restaurant) {
+        Boolean liked = likeWrites.getPending(restaurant.getId());
+        String userId = getUserId();
+        if (liked != null && liked != restaurant.getLikes().contains(userId)) restaurant.toggleLike(userId);
+        return restaurant;
+    }
+
     private Observable<Restaurant> updateRating(Restaurant restaurant) {
         return userRepository.watchNumberOfUsers()
                 .map(nTotalUsers -> {
@@ -59,11 +94,17 @@ public class DetailViewModel extends ViewModel {
 
         disposables.add(
                 userRepository
-                        .watchUsersEatingAt(restaurantId)
-                        .flatMap(Observable::fromIterable)
-                        .flatMap(this::updateChosenRestaurant)
-                        .subscribe(user -> {
-                            users.put(user.getId(), new User(user));
+                        .watchUserChangesEatingAt(restaurantId)
+                        .concatMap(changes -> Observable.fromIterable(changes)
+                                .concatMapEager(change -> updateChosenRestaurant(change, users))
+                                .toList()
+                                .toObservable())
+                        .subscribe(changes -> {
+                            for (UserChange change : changes) {
+                                User user = change.getUser();
+                                if (change.getType() == UserChange.Type.REMOVED) users.remove(user.getId());
+                                else users.put(user.getId(), new User(user));
+                            }
                             workmatesLiveData.postValue(new ArrayList<>(users.values()));
                         })
         );
@@ -71,6 +112,18 @@ public class DetailViewModel extends ViewModel {
         return workmatesLiveData;
     }
 
+    // The restaurant is only resolved for the users who have just chosen it
+    private Observable<UserChange> updateChosenRestaurant(UserChange change, Map<String, User> users) {
+        if (change.getType() == UserChange.Type.REMOVED) return Observable.just(change);
+
+        User previous = users.get(change.getUser().getId());
+        if (previous != null && !change.isChosenRestaurantChanged()) {
+            change.getUser().setChosenRestaurant(previous.getChosenRestaurant());
+            return Observable.just(change);
+        }
+        return updateChosenRestaurant(change.getUser()).map(user -> change);
+    }
+
     private Observable<User> updateChosenRestaurant(User user) {
         if (user.getChosenRestaurantId().equals(""))
             return Observable.just(user);
@@ -84,28 +137,27 @@ public class DetailViewModel extends ViewModel {
     }
 
     public void stopListening() {
+        choiceWrites.flushAll();
+        likeWrites.flushAll();
         disposables.clear();
     }
 
+    /**
+     * Chooses the restaurant, or cancels the choice if it was already chosen, based on the state shown
+     */
     public void toggleChosenRestaurant(String userId, String restaurantId) {
-        disposables.add(
-                userRepository
-                        .getChosenRestaurant(userId)
-                        .subscribe(chosenRestaurantId -> {
-                            if (chosenRestaurantId != null && chosenRestaurantId.equals(restaurantId)) {
-                                userRepository.setChosenRestaurant(getUserId(), "");
-                            } else {
-                                userRepository.setChosenRestaurant(getUserId(), restaurantId);
-                            }
-                        })
-        );
+        String current = chosenRestaurant.getValue() != null ? chosenRestaurant.getValue() : "";
+        String next = current.equals(restaurantId) ? "" : restaurantId;
+        chosenRestaurant.setValue(next);
+        choiceWrites.submit(userId, next, current);
     }
 
     public LiveData<String> watchChosenRestaurant(String userId) {
-        MutableLiveData<String> chosenRestaurant = new MutableLiveData<>();
         disposables.add(
                 userRepository
                         .watchChosenRestaurant(userId)
+                        // A choice waiting to be written wins over the stored one
+                        .filter(restaurantId -> !choiceWrites.isPending(userId))
                         .subscribe(chosenRestaurant::postValue));
         return chosenRestaurant;
     }
@@ -115,7 +167,7 @@ public class DetailViewModel extends ViewModel {
     }
 
     public void toggleLike(String userId, Restaurant restaurant) {
-        restaurant.toggleLike(userId);
-        restaurantRepository.addRestaurantToFirebase(restaurant);
+        boolean liked = restaurant.toggleLike(userId);
+        likeWrites.submit(restaurant.getId(), liked, !liked);
     }
 }
@@ -4,54 +4,108 @@ import android.content.Context;
 import android.location.Location;
 import android.util.Log;
 
+import androidx.core.util.Pair;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
 import com.fthiery.go4lunch.model.Restaurant;
 import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
 import com.fthiery.go4lunch.repository.RestaurantRepository;
 import com.fthiery.go4lunch.repository.UserRepository;
+import com.fthiery.go4lunch.utils.CoverageTracker;
+import com.fthiery.go4lunch.utils.MovementEstimator;
+import com.fthiery.go4lunch.utils.RestaurantSearchIndex;
 import com.fthiery.go4lunch.utils.Sort;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.tasks.Task;
+import com.google.maps.android.SphericalUtil;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.disposables.SerialDisposable;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import io.reactivex.rxjava3.subjects.PublishSubject;
 
 public class MainViewModel extends ViewModel {
 
+    /**
+     * Delay without keystroke before a typed query is sent
+     **/
+    private static final long QUERY_DEBOUNCE_MS = 300;
+    private static final int LOCAL_RESULTS_LIMIT = 20;
+
+    // Restaurants are prefetched where the user will be in a minute, at most 1 km ahead
+    private static final long PREFETCH_HORIZON_MS = 60_000;
+    private static final double PREFETCH_MAX_DISTANCE = 1000;
+    private static final int PREFETCH_RESTAURANTS = 10;
+
+    // Cells of about 150 m, smaller than any search. Zoomed out views are not searched
+    private static final int COVERAGE_PRECISION = 7;
+    private static final double MAX_VISIBLE_REGION_DIAGONAL = 5000;
+    private static final int MAX_SEARCHES_PER_REGION = 4;
+
     private final UserRepository userRepository;
     private final RestaurantRepository restaurantRepository;
 
     private final MutableLiveData<List<Restaurant>> restaurantsLiveData = new MutableLiveData<>();
     private final Map<String, Restaurant> restaurantsMap = new ConcurrentHashMap<>();
 
+    // Every restaurant seen so far, searchable without the network
+    private final Map<String, Restaurant> knownRestaurants = new ConcurrentHashMap<>();
+    private final RestaurantSearchIndex searchIndex = new RestaurantSearchIndex();
+
     private final CompositeDisposable disposables = new CompositeDisposable();
-    private Disposable restaurantsDisposable;
+
+    // Search inputs: typed queries are debounced, submitted queries and locations are not
+    private final PublishSubject<String> typedQueries = PublishSubject.create();
+    private final PublishSubject<String> submittedQueries = PublishSubject.create();
+    private final BehaviorSubject<LatLng> locations = BehaviorSubject.create();
+    private final BehaviorSubject<LatLngBounds> visibleRegions = BehaviorSubject.create();
+    private final CoverageTracker coverage = new CoverageTracker(COVERAGE_PRECISION);
+
+    private final MovementEstimator movement = new MovementEstimator();
+    private final SerialDisposable prefetch = new SerialDisposable();
+    private String prefetchedSearch;
 
     private LatLng location;
+    // Center and radius of the current search
+    private LatLng searchCenter;
+    private int searchRadius;
     private int numberOfUsers = 1;
-    AtomicInteger nRestaurants = new AtomicInteger();
+    private final Set<String> searchResultIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private int sort = 0;
 
     public MainViewModel() {
         this(UserRepository.getInstance(), RestaurantRepository.getInstance());
         disposables.add(userRepository.watchNumberOfUsers().subscribe(this::updateRatings));
+        // Restaurants seen on previous launches, from the local cache. The others are added as they are watched
+        disposables.add(restaurantRepository.getKnownRestaurants().subscribe(
+                restaurants -> {
+                    for (Restaurant restaurant : restaurants) addToSearchIndex(restaurant);
+                },
+                throwable -> Log.w("MainViewModel", "getKnownRestaurants: ", throwable)));
     }
 
     public MainViewModel(UserRepository userRepository, RestaurantRepository restaurantRepository) {
         super();
         this.userRepository = userRepository;
         this.restaurantRepository = restaurantRepository;
+        disposables.add(watchRestaurants());
+        disposables.add(watchUnavailableRestaurants());
+        disposables.add(prefetch);
     }
 
     private void updateRatings(Integer n) {
@@ -75,49 +129,213 @@ public class MainViewModel extends ViewModel {
     }
 
     public void setLocation(LatLng latlng) {
-        location = latlng;
-        getRestaurants("");
+        locations.onNext(latlng);
     }
 
     public void setLocation(Location location) {
         setLocation(new LatLng(location.getLatitude(), location.getLongitude()));
     }
 
-    public void getRestaurants(String query) {
-        restaurantsMap.clear();
-        if (restaurantsDisposable != null) restaurantsDisposable.dispose();
+    /**
+     * Sets the region of the map visible to the user. The parts of it not searched yet are searched,
+     * and their restaurants are added to the current ones
+     *
+     * @param bounds the bounds of the visible region
+     */
+    public void setVisibleRegion(LatLngBounds bounds) {
+        visibleRegions.onNext(bounds);
+    }
+
+    /**
+     * Follows the movements of the user. When the user is heading to another place,
+     * the restaurants there are prefetched so that they are displayed as soon as the user arrives
+     *
+     * @param fix a location fix, even a close one
+     */
+    public void updateMovement(Location fix) {
+        LatLng position = new LatLng(fix.getLatitude(), fix.getLongitude());
+        movement.addFix(position, fix.getTime());
+
+        LatLng ahead = movement.predict(PREFETCH_HORIZON_MS, PREFETCH_MAX_DISTANCE);
+        if (ahead == null) return;
+
+        // The search of the cell ahead, if it is not the one of the current cell
+        String search = restaurantRepository.getSearchKey("", ahead);
+        if (search.equals(prefetchedSearch) || search.equals(restaurantRepository.getSearchKey("", position)))
+            return;
+
+        // A new prediction cancels the previous prefetch
+        prefetchedSearch = search;
+        prefetch.set(restaurantRepository.prefetch(ahead, PREFETCH_RESTAURANTS).subscribe(
+                () -> {},
+                throwable -> Log.w("MainViewModel", "prefetch: ", throwable)));
+    }
+
+    /**
+     * Sets the query being typed in the SearchView. The search starts once the user stops typing
+     *
+     * @param query the text of the SearchView
+     */
+    public void setQuery(String query) {
+        typedQueries.onNext(query);
+    }
+
+    /**
+     * Sets the query submitted in the SearchView. The search starts immediately
+     *
+     * @param query the text of the SearchView
+     */
+    public void submitQuery(String query) {
+        submittedQueries.onNext(query);
+    }
+
+    private Disposable watchRestaurants() {
+        // Each new query, or a location out of the area searched, cancels the previous search,
+        // its Places call and its listeners
+        Observable<String> queries = Observable
+                .merge(typedQueries.debounce(QUERY_DEBOUNCE_MS, TimeUnit.MILLISECONDS), submittedQueries)
+                .map(String::trim)
+                .startWithItem("")
+                .distinctUntilChanged();
+
+        return Observable
+                .combineLatest(queries, locations, Pair::create)
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnNext(search -> updateLocation(search.second))
+                .distinctUntilChanged((previous, next) -> previous.first.equals(next.first) && isSearched(next.first, next.second))
+                .switchMap(search -> getRestaurants(search.first, search.second))
+                .subscribe(this::updateRestaurantMap, throwable -> Log.e("getRestaurants", "error: ", throwable));
+    }
 
-        restaurantsDisposable = restaurantRepository.searchRestaurants(query, location)
-                .doOnSuccess(restaurants -> nRestaurants.set(restaurants.size()))
-                .flatMapObservable(Observable::fromIterable)
-                .flatMap(restaurantRepository::watchRestaurant)
-                .flatMap(this::updateWorkmates)
+    private Observable<Restaurant> getRestaurants(String query, LatLng latLng) {
+        Observable<List<Restaurant>> pages = restaurantRepository.searchRestaurants(query, latLng);
+        // Known restaurants matching the query are shown while the remote search runs
+        if (!query.isEmpty()) pages = pages.startWithItem(searchLocally(query, latLng));
+        // Without query, the regions of the map visited by the user are searched too
+        else pages = pages.mergeWith(visibleRegions.switchMap(this::searchVisibleRegion));
+
+        return pages
+                .doOnSubscribe(disposable -> {
+                    searchCenter = latLng;
+                    searchRadius = restaurantRepository.getSearchRadius(query, latLng);
+                    restaurantsMap.clear();
+                    searchResultIds.clear();
+                    coverage.clear();
+                    if (query.isEmpty()) coverage.cover(latLng, searchRadius);
+                })
+                // Pages arrive one at a time, each is displayed once all its restaurants are loaded.
+                // Local and remote results are merged by place_id
+                .map(page -> newSearchResults(page, latLng))
+                .filter(results -> !results.isEmpty())
+                // The restaurants of a page are watched together with their workmates, details of the closest ones are requested first
+                .flatMap(results -> {
+                    List<String> ids = new ArrayList<>();
+                    for (Restaurant restaurant : results) ids.add(restaurant.getId());
+                    return restaurantRepository.watchRestaurants(ids, results.get(0).getDistance());
+                })
                 .map(restaurant -> {
                     restaurant.updateDistanceTo(location);
                     restaurant.updateRating(numberOfUsers);
                     return restaurant;
                 })
-                .subscribe(this::updateRestaurantMap, throwable -> Log.e("getRestaurants", "error: ", throwable));
+                // A failed search must not stop the following ones
+                .doOnError(throwable -> Log.e("getRestaurants", "error: ", throwable))
+                .onErrorComplete();
+    }
 
-        disposables.add(restaurantsDisposable);
+    // A restaurant whose details can't be loaded no longer holds back the list
+    private Disposable watchUnavailableRestaurants() {
+        return restaurantRepository.watchUnavailableRestaurants()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(placeId -> {
+                    if (searchResultIds.remove(placeId)) updateRestaurantMap();
+                }, throwable -> Log.e("MainViewModel", "watchUnavailableRestaurants: ", throwable));
     }
 
-    private Observable<Restaurant> updateWorkmates(Restaurant restaurant) {
-        return userRepository.watchUsersEatingAt(restaurant.getId())
-                .map(users -> {
-                    restaurant.setWorkmates(users.size());
-                    return restaurant;
-                });
+    /**
+     * @return true if the location is inside the area searched for the query, including the regions
+     * of the map searched since
+     */
+    private boolean isSearched(String query, LatLng latLng) {
+        if (searchCenter == null) return false;
+        if (query.isEmpty()) return coverage.isCovered(latLng);
+        // Keyword results must still surround the user
+        return SphericalUtil.computeDistanceBetween(searchCenter, latLng) <= searchRadius / 2d;
+    }
+
+    // The results are kept, only their distances change
+    private void updateLocation(LatLng latLng) {
+        location = latLng;
+        if (restaurantsMap.isEmpty()) return;
+        for (Restaurant restaurant : restaurantsMap.values()) restaurant.updateDistanceTo(latLng);
+        updateRestaurantMap();
+    }
+
+    // Keeps the restaurants of a page not found yet, closest first
+    private List<Restaurant> newSearchResults(List<Restaurant> page, LatLng latLng) {
+        List<Restaurant> results = new ArrayList<>();
+        for (Restaurant restaurant : page) {
+            if (searchResultIds.add(restaurant.getId())) {
+                restaurant.updateDistanceTo(latLng);
+                results.add(restaurant);
+            }
+        }
+        Collections.sort(results, (left, right) -> left.getDistance() - right.getDistance());
+        return results;
+    }
+
+    // Searches the uncovered parts of a region, closest to its center first
+    private Observable<List<Restaurant>> searchVisibleRegion(LatLngBounds bounds) {
+        if (SphericalUtil.computeDistanceBetween(bounds.southwest, bounds.northeast) > MAX_VISIBLE_REGION_DIAGONAL)
+            return Observable.empty();
+
+        LatLng target = bounds.getCenter();
+        // Each search is planned when it starts, once the previous ones have covered their cells
+        return Observable.range(0, MAX_SEARCHES_PER_REGION).concatMap(i -> Observable.defer(() -> {
+            LatLng center = coverage.nearestUncovered(bounds.southwest, bounds.northeast, target);
+            if (center == null) return Observable.<List<Restaurant>>empty();
+
+            // Cells are covered once planned, and uncovered again if their search does not complete
+            Set<String> cells = coverage.cover(center, restaurantRepository.getSearchRadius("", center));
+            return restaurantRepository.searchRestaurants("", center)
+                    .doOnError(throwable -> coverage.forget(cells))
+                    .doOnDispose(() -> coverage.forget(cells))
+                    .onErrorComplete();
+        }));
+    }
+
+    private List<Restaurant> searchLocally(String query, LatLng latLng) {
+        int radius = restaurantRepository.getSearchRadius(query, latLng);
+        List<Restaurant> results = new ArrayList<>();
+        for (String id : searchIndex.search(query, LOCAL_RESULTS_LIMIT)) {
+            Restaurant known = knownRestaurants.get(id);
+            if (known == null) continue;
+
+            Restaurant restaurant = new Restaurant(known);
+            restaurant.updateDistanceTo(latLng);
+            if (restaurant.getDistance() <= radius) results.add(restaurant);
+        }
+        return results;
+    }
+
+    private void addToSearchIndex(Restaurant restaurant) {
+        if (restaurant.getId() == null) return;
+        knownRestaurants.put(restaurant.getId(), restaurant);
+        searchIndex.add(restaurant.getId(), restaurant.getName(), restaurant.getAddress());
     }
 
     private void updateRestaurantMap(Restaurant restaurant) {
+        // It may have been stored since its details request failed
+        searchResultIds.add(restaurant.getId());
         restaurantsMap.put(restaurant.getId(), new Restaurant(restaurant));
+        addToSearchIndex(restaurant);
         updateRestaurantMap();
     }
 
     private void updateRestaurantMap() {
-        // Builds a list from restaurantsMap then sorts it and updates the LiveData
-        if (restaurantsMap.size() == nRestaurants.get()) {
+        // Builds a list from restaurantsMap then sorts it and updates the LiveData,
+        // once every restaurant of the search is loaded or unavailable
+        if (restaurantsMap.keySet().containsAll(searchResultIds)) {
             ArrayList<Restaurant> restaurants = new ArrayList<>(restaurantsMap.values());
 
             Collections.sort(restaurants, (left, right) -> {
@@ -149,11 +367,18 @@ public class MainViewModel extends ViewModel {
 
         disposables.add(
                 userRepository
-                        .watchAllUsers()
-                        .flatMap(Observable::fromIterable)
-                        .flatMap(this::updateChosenRestaurant)
-                        .subscribe(user -> {
-                            users.put(user.getId(), new User(user));
+                        .watchUserChanges()
+                        // The changes of a snapshot are applied together, once their restaurants are known
+                        .concatMap(changes -> Observable.fromIterable(changes)
+                                .concatMapEager(change -> updateChosenRestaurant(change, users))
+                                .toList()
+                                .toObservable())
+                        .subscribe(changes -> {
+                            for (UserChange change : changes) {
+                                User user = change.getUser();
+                                if (change.getType() == UserChange.Type.REMOVED) users.remove(user.getId());
+                                else users.put(user.getId(), new User(user));
+                            }
                             ArrayList<User> userList = new ArrayList<>(users.values());
                             Collections.sort(userList, (left, right) -> {
                                 if (left.getChosenRestaurant() == null) return Integer.MAX_VALUE;
@@ -167,6 +392,20 @@ public class MainViewModel extends ViewModel {
         return workmatesLiveData;
     }
 
+    /**
+     * Resolves the chosen restaurant of a user, unless it hasn't changed
+     */
+    private Observable<UserChange> updateChosenRestaurant(UserChange change, Map<String, User> users) {
+        if (change.getType() == UserChange.Type.REMOVED) return Observable.just(change);
+
+        User previous = users.get(change.getUser().getId());
+        if (previous != null && !change.isChosenRestaurantChanged()) {
+            change.getUser().setChosenRestaurant(previous.getChosenRestaurant());
+            return Observable.just(change);
+        }
+        return updateChosenRestaurant(change.getUser()).map(user -> change);
+    }
+
     private Observable<User> updateChosenRestaurant(User user) {
         if (user.getChosenRestaurantId().equals(""))
             return Observable.just(user);
@@ -0,0 +1,26 @@
+package com.fthiery.go4lunch.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class UserChangeTest {
+
+    @Test
+    public void checkChosenRestaurantChange() {
+        // GIVEN
+        UserChange renamed = new UserChange(UserChange.Type.MODIFIED, user("u1", "r1"), "r1");
+        UserChange moved = new UserChange(UserChange.Type.MODIFIED, user("u1", "r2"), "r1");
+        UserChange added = new UserChange(UserChange.Type.ADDED, user("u1", "r1"), null);
+        // THEN
+        assertFalse(renamed.isChosenRestaurantChanged());
+        assertTrue(moved.isChosenRestaurantChanged());
+        assertTrue(added.isChosenRestaurantChanged());
+    }
+
+    private static User user(String id, String restaurantId) {
+        User user = new User(id, id, id + "@mail.com", "");
+        user.setChosenRestaurantId(restaurantId);
+        return user;
+    }
+}
@@ -0,0 +1,117 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+
+public class ChoiceJoinTest {
+
+    private final Map<String, BehaviorSubject<User>> users = new HashMap<>();
+    private final PublishSubject<Map<String, String>> choices = PublishSubject.create();
+    private ChoiceJoin join;
+
+    @Before
+    public void init() {
+        users.put("u1", BehaviorSubject.create());
+        users.put("u2", BehaviorSubject.create());
+        join = new ChoiceJoin(users::get);
+    }
+
+    @Test
+    public void checkFirstEmissionWaitsForEveryUser() {
+        // GIVEN
+        users.get("u1").onNext(new User("u1", "Alice", "alice@mail.com", ""));
+        TestObserver<List<UserChange>> observer = join.join(choices).test();
+        // WHEN
+        choices.onNext(choices("u1", "u2"));
+        observer.assertNoValues();
+        users.get("u2").onNext(new User("u2", "Bob", "bob@mail.com", ""));
+        // THEN
+        observer.assertValueCount(1);
+        List<UserChange> changes = observer.values().get(0);
+        assertEquals(2, changes.size());
+        assertEquals(UserChange.Type.ADDED, changes.get(0).getType());
+        assertEquals("Alice", changes.get(0).getUser().getName());
+        assertEquals("r1", changes.get(0).getUser().getChosenRestaurantId());
+        assertEquals("Bob", changes.get(1).getUser().getName());
+    }
+
+    @Test
+    public void checkRenamedUserIsModified() {
+        // GIVEN
+        users.get("u1").onNext(new User("u1", "Alice", "alice@mail.com", ""));
+        TestObserver<List<UserChange>> observer = join.join(choices).test();
+        choices.onNext(choices("u1"));
+        // WHEN
+        users.get("u1").onNext(new User("u1", "Alice Smith", "alice@mail.com", ""));
+        // THEN
+        observer.assertValueCount(2);
+        UserChange change = observer.values().get(1).get(0);
+        assertEquals(UserChange.Type.MODIFIED, change.getType());
+        assertEquals("Alice Smith", change.getUser().getName());
+        assertFalse(change.isChosenRestaurantChanged());
+    }
+
+    @Test
+    public void checkUserLeavingIsRemovedAndNoLongerWatched() {
+        // GIVEN
+        users.get("u1").onNext(new User("u1", "Alice", "alice@mail.com", ""));
+        users.get("u2").onNext(new User("u2", "Bob", "bob@mail.com", ""));
+        TestObserver<List<UserChange>> observer = join.join(choices).test();
+        choices.onNext(choices("u1", "u2"));
+        // WHEN
+        choices.onNext(choices("u2"));
+        // THEN
+        observer.assertValueCount(2);
+        List<UserChange> changes = observer.values().get(1);
+        assertEquals(1, changes.size());
+        assertEquals(UserChange.Type.REMOVED, changes.get(0).getType());
+        assertEquals("u1", changes.get(0).getUser().getId());
+        assertFalse(users.get("u1").hasObservers());
+        assertTrue(users.get("u2").hasObservers());
+    }
+
+    @Test
+    public void checkEmptyChoicesAreEmitted() {
+        // GIVEN
+        TestObserver<List<UserChange>> observer = join.join(choices).test();
+        // WHEN
+        choices.onNext(Collections.emptyMap());
+        // THEN
+        observer.assertValue(List::isEmpty);
+    }
+
+    @Test
+    public void checkDisposingStopsWatchingUsers() {
+        // GIVEN
+        users.get("u1").onNext(new User("u1", "Alice", "alice@mail.com", ""));
+        TestObserver<List<UserChange>> observer = join.join(choices).test();
+        choices.onNext(choices("u1"));
+        // WHEN
+        observer.dispose();
+        // THEN
+        assertFalse(users.get("u1").hasObservers());
+        assertFalse(choices.hasObservers());
+    }
+
+    // Every user has chosen r1
+    private static Map<String, String> choices(String... userIds) {
+        Map<String, String> choices = new LinkedHashMap<>();
+        for (String userId : userIds) choices.put(userId, "r1");
+        return choices;
+    }
+}
@@ -0,0 +1,124 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+public class HedgedRequestPolicyTest {
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final HedgedRequestPolicy policy = new HedgedRequestPolicy(10_000, 3, 1000, scheduler);
+
+    @Test
+    public void checkSlowRequestIsHedged() {
+        // GIVEN a first call that never answers, the following ones answer immediately
+        AtomicInteger calls = new AtomicInteger();
+        Single<Integer> request = Single.defer(() -> {
+            int call = calls.incrementAndGet();
+            return call == 1 ? Single.never() : Single.just(call);
+        });
+        // WHEN
+        TestObserver<Integer> observer = policy.execute("test", request).test();
+        scheduler.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        observer.assertNoValues();
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        // THEN the duplicate answered
+        observer.assertValue(2);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void checkFailedRequestIsRetried() {
+        // GIVEN two failures, then an answer
+        AtomicInteger calls = new AtomicInteger();
+        Single<Integer> request = Single.defer(() -> calls.incrementAndGet() <= 2
+                ? Single.error(new IOException("Connection reset"))
+                : Single.just(calls.get()));
+        // WHEN
+        TestObserver<Integer> observer = policy.execute("test", request).test();
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        // THEN
+        observer.assertValue(3);
+    }
+
+    @Test
+    public void checkRetriesStopAtMaxAttempts() {
+        // GIVEN
+        AtomicInteger calls = new AtomicInteger();
+        Single<Integer> request = Single.defer(() -> {
+            calls.incrementAndGet();
+            return Single.error(new IOException("Connection reset"));
+        });
+        // WHEN
+        TestObserver<Integer> observer = policy.execute("test", request).test();
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        // THEN
+        observer.assertError(IOException.class);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void checkDeadlineIsEnforced() {
+        // GIVEN
+        TestObserver<Integer> observer = policy.execute("test", Single.<Integer>never()).test();
+        // WHEN
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        // THEN
+        observer.assertError(TimeoutException.class);
+    }
+
+    @Test
+    public void checkHedgeDelayFollowsLatencies() {
+        // GIVEN 20 requests answering after 300 ms
+        for (int i = 0; i < 20; i++) {
+            TestObserver<Integer> observer = policy.execute("test", Single.timer(300, TimeUnit.MILLISECONDS, scheduler)
+                    .map(Long::intValue)).test();
+            scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+            observer.assertComplete();
+        }
+        // THEN
+        assertEquals(300, policy.getLatencyStats().get("test").getPercentile(0.95));
+        assertEquals(300, policy.getHedgeDelay("test"));
+        assertEquals(1000, policy.getHedgeDelay("other"));
+    }
+
+    @Test
+    public void checkHedgedLatencyIncludesHedgeDelay() {
+        // GIVEN a first call that never answers, a duplicate answering after 200 ms
+        AtomicInteger calls = new AtomicInteger();
+        Single<Integer> request = Single.defer(() -> calls.incrementAndGet() == 1
+                ? Single.never()
+                : Single.timer(200, TimeUnit.MILLISECONDS, scheduler).map(Long::intValue));
+        // WHEN
+        TestObserver<Integer> observer = policy.execute("test", request).test();
+        scheduler.advanceTimeBy(1200, TimeUnit.MILLISECONDS);
+        // THEN the latency is measured from the first call
+        observer.assertComplete();
+        assertEquals(1200, policy.getLatencyStats().get("test").getPercentile(0.95));
+    }
+
+    @Test
+    public void checkRetriedRequestIsNotHedged() {
+        // GIVEN a request that never answers
+        AtomicInteger calls = new AtomicInteger();
+        Single<Integer> request = Single.defer(() -> {
+            calls.incrementAndGet();
+            return Single.never();
+        });
+        // WHEN
+        TestObserver<Integer> observer = policy.retry("test", request).test();
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        // THEN no duplicate was sent
+        observer.assertError(TimeoutException.class);
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,24 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HitRateTrackerTest {
+
+    @Test
+    public void checkHitRate() {
+        // GIVEN
+        HitRateTracker tracker = new HitRateTracker();
+        assertEquals(0, tracker.getHitRate(), 0);
+        // WHEN
+        tracker.record(true);
+        tracker.record(true);
+        tracker.record(true);
+        tracker.record(false);
+        // THEN
+        assertEquals(4, tracker.getRequests());
+        assertEquals(3, tracker.getHits());
+        assertEquals(0.75, tracker.getHitRate(), 1e-9);
+    }
+}
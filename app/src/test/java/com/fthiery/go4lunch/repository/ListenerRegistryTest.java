@@ -0,0 +1,78 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+
+public class ListenerRegistryTest {
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final ListenerRegistry registry = new ListenerRegistry(5000, scheduler);
+    private final AtomicInteger registrations = new AtomicInteger();
+    private final AtomicInteger removals = new AtomicInteger();
+    private final BehaviorSubject<String> document = BehaviorSubject.createDefault("v1");
+
+    private Observable<String> listener() {
+        return document
+                .doOnSubscribe(disposable -> registrations.incrementAndGet())
+                .doOnDispose(removals::incrementAndGet);
+    }
+
+    @Test
+    public void checkSubscribersShareOneListener() {
+        // WHEN
+        TestObserver<String> first = registry.share("users/u1", this::listener).test();
+        document.onNext("v2");
+        TestObserver<String> second = registry.share("users/u1", this::listener).test();
+        // THEN the second subscriber gets the latest value
+        assertEquals(1, registrations.get());
+        first.assertValues("v1", "v2");
+        second.assertValues("v2");
+    }
+
+    @Test
+    public void checkListenerIsKeptDuringGracePeriod() {
+        // GIVEN
+        registry.share("users/u1", this::listener).test().dispose();
+        // WHEN a subscriber comes back before the end of the grace period
+        scheduler.advanceTimeBy(4, TimeUnit.SECONDS);
+        TestObserver<String> observer = registry.share("users/u1", this::listener).test();
+        // THEN
+        observer.assertValues("v1");
+        assertEquals(1, registrations.get());
+        assertEquals(0, removals.get());
+    }
+
+    @Test
+    public void checkListenerIsRemovedAfterGracePeriod() {
+        // GIVEN
+        registry.share("users/u1", this::listener).test().dispose();
+        // WHEN
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        // THEN
+        assertEquals(1, removals.get());
+        assertEquals(0, registry.size());
+        registry.share("users/u1", this::listener).test();
+        assertEquals(2, registrations.get());
+    }
+
+    @Test
+    public void checkTerminatedListenerKeepsNewerRegistration() {
+        // GIVEN a listener that has terminated and has been replaced
+        Observable<String> old = registry.share("users/u1", () -> Observable.just("v1"));
+        old.test();
+        registry.share("users/u1", this::listener).test();
+        // WHEN the old one is subscribed again and terminates
+        old.test();
+        // THEN the newer registration is kept
+        assertEquals(1, registry.size());
+    }
+}
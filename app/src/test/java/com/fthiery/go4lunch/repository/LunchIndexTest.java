@@ -0,0 +1,95 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import com.fthiery.go4lunch.model.User;
+import com.fthiery.go4lunch.model.UserChange;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LunchIndexTest {
+
+    @Test
+    public void checkUsersAreGroupedByRestaurant() {
+        // GIVEN
+        LunchIndex index = new LunchIndex("example.com/2022-01-31");
+        // WHEN
+        index.apply(Arrays.asList(added("u1", "r1"), added("u2", "r2"), added("u3", "r1"), added("u4", "")));
+        // THEN
+        assertEquals(Arrays.asList("u1", "u3"), new ArrayList<>(index.getChoicesAt("r1").keySet()));
+        assertEquals("r1", index.getChoicesAt("r1").get("u3"));
+        assertEquals(2, index.getCount("r1"));
+        assertEquals(0, index.getCount("r3"));
+        assertEquals("r2", index.getChosenRestaurantId("u2"));
+        assertEquals("", index.getChosenRestaurantId("u4"));
+    }
+
+    @Test
+    public void checkMovedAndRemovedUsersAreUnindexed() {
+        // GIVEN
+        LunchIndex index = new LunchIndex("example.com/2022-01-31");
+        index.apply(Arrays.asList(added("u1", "r1"), added("u2", "r1"), added("u3", "r2")));
+        // WHEN u1 moves to r3, then u2 and u3 are removed
+        index.apply(Collections.singletonList(change(UserChange.Type.MODIFIED, "u1", "r3", "r1")));
+        index.apply(Arrays.asList(
+                change(UserChange.Type.REMOVED, "u2", "r1", "r1"),
+                change(UserChange.Type.REMOVED, "u3", "r2", "r2")));
+        // THEN
+        assertTrue(index.getChoicesAt("r1").isEmpty());
+        assertEquals(0, index.getCount("r2"));
+        assertEquals(Collections.singletonMap("u1", "r3"), index.getChoicesAt("r3"));
+        assertEquals("", index.getChosenRestaurantId("u2"));
+    }
+
+    @Test
+    public void checkFirstCountsHoldEveryRestaurant() {
+        // GIVEN
+        LunchIndex index = new LunchIndex("example.com/2022-01-31");
+        index.apply(Arrays.asList(added("u1", "r1"), added("u2", "r1"), added("u3", "r2"), added("u4", "")));
+        // WHEN
+        Map<String, Integer> counts = index.getChangedCounts(new HashMap<>());
+        // THEN
+        assertEquals(2, counts.size());
+        assertEquals(2, (int) counts.get("r1"));
+        assertEquals(1, (int) counts.get("r2"));
+    }
+
+    @Test
+    public void checkOnlyChangedCountsAreReported() {
+        // GIVEN
+        LunchIndex index = new LunchIndex("example.com/2022-01-31");
+        Map<String, Integer> counts = new HashMap<>();
+        index.apply(Arrays.asList(added("u1", "r1"), added("u2", "r1"), added("u3", "r2")));
+        index.getChangedCounts(counts);
+        // WHEN u1 moves to r3, u3 is modified without moving, then u2 is removed
+        index.apply(Arrays.asList(
+                change(UserChange.Type.MODIFIED, "u1", "r3", "r1"),
+                change(UserChange.Type.MODIFIED, "u3", "r2", "r2")));
+        Map<String, Integer> moved = index.getChangedCounts(counts);
+        index.apply(Collections.singletonList(change(UserChange.Type.REMOVED, "u2", "r1", "r1")));
+        Map<String, Integer> removed = index.getChangedCounts(counts);
+        // THEN
+        assertEquals(2, moved.size());
+        assertEquals(1, (int) moved.get("r1"));
+        assertEquals(1, (int) moved.get("r3"));
+        assertEquals(Collections.singletonMap("r1", 0), removed);
+        assertEquals(1, index.getCount("r2"));
+    }
+
+    private static UserChange added(String userId, String restaurantId) {
+        return change(UserChange.Type.ADDED, userId, restaurantId, null);
+    }
+
+    private static UserChange change(UserChange.Type type, String userId, String restaurantId, String previous) {
+        User user = new User();
+        user.setId(userId);
+        user.setChosenRestaurantId(restaurantId);
+        return new UserChange(type, user, previous);
+    }
+}
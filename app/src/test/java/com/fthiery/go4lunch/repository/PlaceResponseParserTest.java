@@ -0,0 +1,77 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import com.fthiery.go4lunch.model.Restaurant;
+import com.fthiery.go4lunch.model.placedetails.GooglePlaceDetailResponse;
+import com.fthiery.go4lunch.model.placedetails.GooglePlaceNearbyResponse;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+public class PlaceResponseParserTest {
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void checkNearbyResponseMatchesGson() throws IOException {
+        // GIVEN
+        String json = readPayload("nearby-search.json");
+        // WHEN
+        GooglePlaceNearbyResponse expected = gson.fromJson(json, GooglePlaceNearbyResponse.class);
+        GooglePlaceNearbyResponse actual = PlaceResponseParser.readNearbyResponse(new JsonReader(new StringReader(json)));
+        // THEN
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getNextPageToken(), actual.getNextPageToken());
+        assertEquals(expected.getRestaurantIds(), actual.getRestaurantIds());
+        for (int i = 0; i < expected.getResults().size(); i++) {
+            Restaurant left = expected.getResults().get(i);
+            Restaurant right = actual.getResults().get(i);
+            assertEquals(left.getName(), right.getName());
+            assertEquals(left.getPosition(), right.getPosition());
+            assertEquals(left.getPhotos().get(0).getPhotoReference(), right.getPhotos().get(0).getPhotoReference());
+            // Nearby Search has no opening periods
+            assertNull(right.getOpeningHours());
+        }
+    }
+
+    @Test
+    public void checkDetailResponseMatchesGson() throws IOException {
+        // GIVEN
+        String json = readPayload("place-detail.json");
+        // WHEN
+        Restaurant expected = gson.fromJson(json, GooglePlaceDetailResponse.class).getResult();
+        Restaurant actual = PlaceResponseParser.readDetailResponse(new JsonReader(new StringReader(json))).getResult();
+        // THEN
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getAddress(), actual.getAddress());
+        assertEquals(expected.getPhoneNumber(), actual.getPhoneNumber());
+        assertEquals(expected.getWebsiteUrl(), actual.getWebsiteUrl());
+        assertEquals(expected.getPosition(), actual.getPosition());
+        assertEquals(expected.getPhotos().get(0).getPhotoReference(), actual.getPhotos().get(0).getPhotoReference());
+        assertEquals(1, actual.getPhotos().size());
+        assertEquals(expected.getOpeningHours().getPeriods().size(), actual.getOpeningHours().getPeriods().size());
+        for (int i = 0; i < expected.getOpeningHours().getPeriods().size(); i++) {
+            assertEquals(expected.getOpeningHours().getPeriods().get(i).getOpen().toInt(),
+                    actual.getOpeningHours().getPeriods().get(i).getOpen().toInt());
+            assertEquals(expected.getOpeningHours().getPeriods().get(i).getClose().toInt(),
+                    actual.getOpeningHours().getPeriods().get(i).getClose().toInt());
+        }
+    }
+
+    private static String readPayload(String name) {
+        InputStream stream = PlaceResponseParserTest.class.getResourceAsStream("/api-response/" + name);
+        assertNotNull(stream);
+        try (Scanner scanner = new Scanner(stream, StandardCharsets.UTF_8.name()).useDelimiter("\\A")) {
+            return scanner.next();
+        }
+    }
+}
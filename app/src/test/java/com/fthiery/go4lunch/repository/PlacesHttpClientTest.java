@@ -0,0 +1,99 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+public class PlacesHttpClientTest {
+
+    private static final String NEARBY_PATH = "/maps/api/place/nearbysearch/json?location=0,0";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void init() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = PlacesHttpClient.build(folder.newFolder("http"));
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void checkGzippedResultsAreCached() throws IOException {
+        // GIVEN
+        server.enqueue(gzipped("{\"results\": [], \"status\": \"OK\"}"));
+        // WHEN
+        String first = get(NEARBY_PATH);
+        String second = get(NEARBY_PATH);
+        // THEN
+        assertEquals(first, second);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void checkGzippedErrorsAreNotCached() throws IOException {
+        // GIVEN
+        server.enqueue(gzipped("{\"results\": [], \"status\": \"OVER_QUERY_LIMIT\"}"));
+        server.enqueue(gzipped("{\"results\": [], \"status\": \"OK\"}"));
+        // WHEN
+        String error = get(NEARBY_PATH);
+        String second = get(NEARBY_PATH);
+        // THEN the error is still given to the caller
+        assertTrue(error.contains("OVER_QUERY_LIMIT"));
+        assertTrue(second.contains("OK"));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void checkNextPagesAreNotCached() throws IOException {
+        // GIVEN
+        server.enqueue(gzipped("{\"results\": [], \"status\": \"OK\"}"));
+        server.enqueue(gzipped("{\"results\": [], \"status\": \"OK\"}"));
+        // WHEN
+        get("/maps/api/place/nearbysearch/json?pagetoken=token");
+        get("/maps/api/place/nearbysearch/json?pagetoken=token");
+        // THEN
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private String get(String path) throws IOException {
+        Request request = new Request.Builder().url(server.url(path)).build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.body().string();
+        }
+    }
+
+    private static MockResponse gzipped(String json) throws IOException {
+        Buffer buffer = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(buffer))) {
+            sink.writeUtf8(json);
+        }
+        return new MockResponse()
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(buffer);
+    }
+}
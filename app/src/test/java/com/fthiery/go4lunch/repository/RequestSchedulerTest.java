@@ -0,0 +1,138 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import com.fthiery.go4lunch.utils.TokenBucket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class RequestSchedulerTest {
+
+    private static final long RESPONSE_DELAY_MS = 50;
+
+    private final OkHttpClient client = new OkHttpClient();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger peakConcurrency = new AtomicInteger();
+    private MockWebServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        // The server keeps track of how many requests it is serving at the same time
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int concurrent = concurrentRequests.incrementAndGet();
+                synchronized (peakConcurrency) {
+                    if (concurrent > peakConcurrency.get()) peakConcurrency.set(concurrent);
+                }
+                Thread.sleep(RESPONSE_DELAY_MS);
+                concurrentRequests.decrementAndGet();
+                return new MockResponse().setBody(String.valueOf(request.getPath()));
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void checkConcurrencyIsBounded() {
+        // GIVEN
+        RequestScheduler scheduler = new RequestScheduler(3, new TokenBucket(100, 1000));
+        List<Single<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) requests.add(scheduler.schedule(request("/" + i), i));
+        // WHEN
+        List<String> responses = Single.merge(requests).toList().blockingGet();
+        // THEN
+        assertEquals(20, responses.size());
+        assertTrue(peakConcurrency.get() <= 3);
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void checkRateIsLimited() {
+        // GIVEN a burst of 2 requests, then 20 requests per second
+        RequestScheduler scheduler = new RequestScheduler(10, new TokenBucket(2, 20));
+        List<Single<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 12; i++) requests.add(scheduler.schedule(request("/" + i), 0));
+        // WHEN
+        long start = System.nanoTime();
+        List<String> responses = Single.merge(requests).toList().blockingGet();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // THEN the 10 requests after the burst take at least 500 ms
+        assertEquals(12, responses.size());
+        assertTrue(elapsedMs >= 450);
+    }
+
+    @Test
+    public void checkHighestPriorityStartsFirst() {
+        // GIVEN a single slot, taken until the gate is opened
+        RequestScheduler scheduler = new RequestScheduler(1, new TokenBucket(100, 1000));
+        SingleSubject<Integer> gate = SingleSubject.create();
+        scheduler.schedule(gate, 0).test();
+
+        List<Integer> startOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Single<Integer>> requests = new ArrayList<>();
+        for (int priority : new int[]{300, 100, 200}) {
+            requests.add(scheduler.schedule(Single.fromCallable(() -> {
+                startOrder.add(priority);
+                return priority;
+            }), priority));
+        }
+        TestSubscriber<Integer> subscriber = Single.merge(requests).test();
+        // WHEN
+        gate.onSuccess(0);
+        subscriber.awaitDone(5, TimeUnit.SECONDS);
+        // THEN
+        subscriber.assertValueCount(3);
+        assertEquals(Arrays.asList(100, 200, 300), startOrder);
+    }
+
+    @Test
+    public void checkDisposedRequestFreesItsSlot() {
+        // GIVEN a single slot, taken by a request that never ends
+        RequestScheduler scheduler = new RequestScheduler(1, new TokenBucket(100, 1000));
+        scheduler.schedule(Single.never(), 0).test().dispose();
+        // WHEN
+        String response = scheduler.schedule(request("/next"), 0).blockingGet();
+        // THEN
+        assertEquals("/next", response);
+        assertEquals(0, scheduler.getRunningCount());
+    }
+
+    private Single<String> request(String path) {
+        return Single.fromCallable(() -> {
+            Request request = new Request.Builder().url(server.url(path)).build();
+            try (Response response = client.newCall(request).execute()) {
+                return response.body() != null ? response.body().string() : "";
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+}
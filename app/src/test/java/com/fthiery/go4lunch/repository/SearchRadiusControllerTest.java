@@ -0,0 +1,62 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+public class SearchRadiusControllerTest {
+
+    private static final LatLng CITY_CENTER = new LatLng(48.8566, 2.3522);
+    private static final LatLng COUNTRYSIDE = new LatLng(46.2276, 2.2137);
+
+    private final SearchRadiusController controller = new SearchRadiusController(20, 800, 200, 5000);
+
+    @Test
+    public void checkDefaultRadius() {
+        assertEquals(800, controller.radiusFor(CITY_CENTER));
+    }
+
+    @Test
+    public void checkDenseAreaShrinks() {
+        // WHEN a search is truncated
+        controller.record(CITY_CENTER, 800, 60);
+        // THEN the radius shrinks until the target is reached
+        assertEquals(400, controller.radiusFor(CITY_CENTER));
+        controller.record(CITY_CENTER, 400, 40);
+        assertEquals(283, controller.radiusFor(CITY_CENTER));
+        controller.record(CITY_CENTER, 283, 20);
+        assertEquals(283, controller.radiusFor(CITY_CENTER));
+        // Other areas are not affected
+        assertEquals(800, controller.radiusFor(COUNTRYSIDE));
+    }
+
+    @Test
+    public void checkSparseAreaGrows() {
+        // WHEN 5 results, a quarter of the target
+        controller.record(COUNTRYSIDE, 800, 5);
+        // THEN the area is multiplied by 4
+        assertEquals(1600, controller.radiusFor(COUNTRYSIDE));
+    }
+
+    @Test
+    public void checkRadiusIsBounded() {
+        controller.record(COUNTRYSIDE, 800, 0);
+        assertEquals(4525, controller.radiusFor(COUNTRYSIDE));
+        controller.record(CITY_CENTER, 800, 60);
+        controller.record(CITY_CENTER, 400, 60);
+        controller.record(CITY_CENTER, 200, 60);
+        assertEquals(200, controller.radiusFor(CITY_CENTER));
+    }
+
+    @Test
+    public void checkLastRadiusIsKept() {
+        assertEquals(800, controller.lastRadiusFor(CITY_CENTER));
+        // WHEN
+        controller.record(CITY_CENTER, 800, 60);
+        // THEN the next search is smaller, the last one is still known
+        assertEquals(400, controller.radiusFor(CITY_CENTER));
+        assertEquals(800, controller.lastRadiusFor(CITY_CENTER));
+    }
+}
@@ -0,0 +1,46 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class WorkspaceTest {
+
+    @Test
+    public void checkWorkspaceIsClaim() {
+        // WHEN
+        String id = Workspace.idOf("jane.doe@example.com", true, "team-42");
+        // THEN
+        assertEquals("team-42", id);
+    }
+
+    @Test
+    public void checkWorkspaceIsCompanyDomain() {
+        // WHEN
+        String id = Workspace.idOf("jane.doe@Example.COM", true, null);
+        // THEN
+        assertEquals("example.com", id);
+    }
+
+    @Test
+    public void checkUnverifiedCompanyDomainIsNotTrusted() {
+        // THEN
+        assertEquals(Workspace.DEFAULT_ID, Workspace.idOf("jane.doe@example.com", false, null));
+        assertEquals("team-42", Workspace.idOf("jane.doe@example.com", false, "team-42"));
+    }
+
+    @Test
+    public void checkPublicDomainUsersShareDefaultWorkspace() {
+        // THEN
+        assertEquals(Workspace.DEFAULT_ID, Workspace.idOf("jane.doe@gmail.com", true, ""));
+        assertEquals(Workspace.DEFAULT_ID, Workspace.idOf("john.doe@hotmail.fr", true, null));
+    }
+
+    @Test
+    public void checkDefaultWorkspaceWithoutEmail() {
+        // THEN
+        assertEquals(Workspace.DEFAULT_ID, Workspace.idOf(null, false, null));
+        assertEquals(Workspace.DEFAULT_ID, Workspace.idOf("jane.doe", true, null));
+        assertEquals(Workspace.DEFAULT_ID, Workspace.idOf("jane.doe@", true, null));
+    }
+}
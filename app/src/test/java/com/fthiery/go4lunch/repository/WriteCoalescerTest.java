@@ -0,0 +1,75 @@
+package com.fthiery.go4lunch.repository;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subjects.CompletableSubject;
+
+public class WriteCoalescerTest {
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final List<String> writes = new ArrayList<>();
+    private final WriteCoalescer<String> coalescer = new WriteCoalescer<>(1000, scheduler,
+            (key, value) -> Completable.fromAction(() -> writes.add(key + "=" + value)));
+
+    @Test
+    public void checkOnlyLastValueIsWritten() {
+        // WHEN the restaurant is chosen, unchosen then chosen again
+        coalescer.submit("users/u1", "r1", "");
+        scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        coalescer.submit("users/u1", "", "r1");
+        scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        coalescer.submit("users/u1", "r1", "");
+        // THEN nothing is written during the quiet period, then only the last value
+        assertEquals("r1", coalescer.getPending("users/u1"));
+        assertTrue(writes.isEmpty());
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.singletonList("users/u1=r1"), writes);
+        assertFalse(coalescer.isPending("users/u1"));
+    }
+
+    @Test
+    public void checkBurstBackToStoredValueWritesNothing() {
+        // WHEN
+        coalescer.submit("users/u1", "r1", "");
+        coalescer.submit("users/u1", "", "r1");
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        // THEN
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void checkKeysAreWrittenIndependently() {
+        // WHEN
+        coalescer.submit("users/u1", "r1", "");
+        coalescer.submit("users/u2", "r2", "");
+        coalescer.flushAll();
+        // THEN
+        Collections.sort(writes);
+        assertEquals(Arrays.asList("users/u1=r1", "users/u2=r2"), writes);
+    }
+
+    @Test
+    public void checkKeyIsPendingUntilWritten() {
+        // GIVEN a slow write
+        CompletableSubject write = CompletableSubject.create();
+        WriteCoalescer<String> slow = new WriteCoalescer<>(1000, scheduler, (key, value) -> write);
+        // WHEN
+        slow.submit("users/u1", "r1", "");
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        // THEN
+        assertNull(slow.getPending("users/u1"));
+        assertTrue(slow.isPending("users/u1"));
+        write.onComplete();
+        assertFalse(slow.isPending("users/u1"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.fthiery.go4lunch.utils;
+
+import static org.junit.Assert.*;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+public class CoverageTrackerTest {
+
+    private static final LatLng CENTER = new LatLng(48.8566, 2.3522);
+
+    private final CoverageTracker tracker = new CoverageTracker(7);
+
+    @Test
+    public void checkSearchedAreaIsCovered() {
+        // GIVEN a viewport of 600 m around the center
+        LatLng southwest = SphericalUtil.computeOffset(CENTER, 300 * Math.sqrt(2), 225);
+        LatLng northeast = SphericalUtil.computeOffset(CENTER, 300 * Math.sqrt(2), 45);
+        // WHEN
+        Set<String> cells = tracker.cover(CENTER, 800);
+        // THEN
+        assertFalse(cells.isEmpty());
+        assertNull(tracker.nearestUncovered(southwest, northeast, CENTER));
+    }
+
+    @Test
+    public void checkPannedAreaIsPartlyUncovered() {
+        // GIVEN a search, then a viewport moved 1 km east
+        tracker.cover(CENTER, 800);
+        LatLng pannedCenter = SphericalUtil.computeOffset(CENTER, 1000, 90);
+        LatLng southwest = SphericalUtil.computeOffset(pannedCenter, 300 * Math.sqrt(2), 225);
+        LatLng northeast = SphericalUtil.computeOffset(pannedCenter, 300 * Math.sqrt(2), 45);
+        // WHEN
+        LatLng nearest = tracker.nearestUncovered(southwest, northeast, pannedCenter);
+        // THEN the nearest uncovered cell is outside of the first search
+        assertNotNull(nearest);
+        assertTrue(SphericalUtil.computeDistanceBetween(CENTER, nearest) > 700);
+    }
+
+    @Test
+    public void checkForgottenCellsAreUncovered() {
+        // GIVEN
+        Set<String> cells = tracker.cover(CENTER, 800);
+        // WHEN
+        tracker.forget(cells);
+        // THEN
+        assertNotNull(tracker.nearestUncovered(CENTER, CENTER, CENTER));
+    }
+
+    @Test
+    public void checkLocationInsideSearchIsCovered() {
+        // WHEN
+        tracker.cover(CENTER, 800);
+        // THEN
+        assertTrue(tracker.isCovered(SphericalUtil.computeOffset(CENTER, 300, 45)));
+        assertFalse(tracker.isCovered(SphericalUtil.computeOffset(CENTER, 2000, 45)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.fthiery.go4lunch.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GeoHashTest {
+
+    @Test
+    public void checkEncode() {
+        // GIVEN
+        double latitude = 57.64911;
+        double longitude = 10.40744;
+        // WHEN
+        String hash = GeoHash.encode(latitude, longitude, 11);
+        // THEN
+        assertEquals("u4pruydqqvj", hash);
+        assertEquals("u4pru", GeoHash.encode(latitude, longitude, 5));
+    }
+
+    @Test
+    public void checkNearbyPositionsShareACell() {
+        // GIVEN
+        int precision = GeoHash.precisionFor(800);
+        // WHEN
+        String hash1 = GeoHash.encode(48.85660, 2.35220, precision);
+        String hash2 = GeoHash.encode(48.85665, 2.35225, precision);
+        String hash3 = GeoHash.encode(48.86660, 2.35220, precision);
+        // THEN
+        assertEquals(hash1, hash2);
+        assertNotEquals(hash1, hash3);
+    }
+
+    @Test
+    public void checkPrecisionFor() {
+        assertEquals(7, GeoHash.precisionFor(800));
+        assertEquals(6, GeoHash.precisionFor(5000));
+        assertTrue(GeoHash.cellSize(GeoHash.precisionFor(800)) <= 200);
+    }
+
+    @Test
+    public void checkBounds() {
+        // WHEN
+        double[] bounds = GeoHash.bounds("u4pru");
+        // THEN the cell contains the encoded position
+        assertTrue(bounds[0] <= 57.64911 && 57.64911 <= bounds[2]);
+        assertTrue(bounds[1] <= 10.40744 && 10.40744 <= bounds[3]);
+        assertEquals("u4pru", GeoHash.encode((bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2, 5));
+    }
+
+    @Test
+    public void checkCellsIn() {
+        // GIVEN the bounds of a cell, slightly reduced
+        double[] bounds = GeoHash.bounds("u4pru");
+        double margin = 1e-6;
+        // WHEN
+        int sameCells = GeoHash.cellsIn(bounds[0] + margin, bounds[1] + margin, bounds[2] - margin, bounds[3] - margin, 5).size();
+        int subCells = GeoHash.cellsIn(bounds[0] + margin, bounds[1] + margin, bounds[2] - margin, bounds[3] - margin, 6).size();
+        // THEN
+        assertEquals(1, sameCells);
+        assertEquals(32, subCells);
+    }
+}
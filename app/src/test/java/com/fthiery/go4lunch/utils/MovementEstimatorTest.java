@@ -0,0 +1,66 @@
+package com.fthiery.go4lunch.utils;
+
+import static org.junit.Assert.*;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+public class MovementEstimatorTest {
+
+    private static final LatLng START = new LatLng(45.7578, 4.8320);
+
+    @Test
+    public void checkWalkingNorth() {
+        // GIVEN a fix every 5 s, 7 m further north each time
+        MovementEstimator estimator = new MovementEstimator();
+        for (int i = 0; i < 5; i++) {
+            estimator.addFix(SphericalUtil.computeOffset(START, 7 * i, 0), 5000L * i);
+        }
+        // WHEN
+        LatLng ahead = estimator.predict(60_000, 1000);
+        // THEN
+        assertTrue(estimator.isMoving());
+        assertEquals(1.4, estimator.getSpeed(), 0.01);
+        assertEquals(0, estimator.getHeading(), 0.5);
+        assertEquals(28 + 84, SphericalUtil.computeDistanceBetween(START, ahead), 0.5);
+        assertTrue(ahead.latitude > START.latitude);
+    }
+
+    @Test
+    public void checkPredictionIsCapped() {
+        // GIVEN driving east at 20 m/s
+        MovementEstimator estimator = new MovementEstimator();
+        estimator.addFix(START, 0);
+        estimator.addFix(SphericalUtil.computeOffset(START, 200, 90), 10_000);
+        // WHEN
+        LatLng ahead = estimator.predict(60_000, 500);
+        // THEN
+        assertEquals(700, SphericalUtil.computeDistanceBetween(START, ahead), 0.5);
+    }
+
+    @Test
+    public void checkStandingStillPredictsNothing() {
+        // GIVEN GPS noise of 1 m every 5 s
+        MovementEstimator estimator = new MovementEstimator();
+        estimator.addFix(START, 0);
+        estimator.addFix(SphericalUtil.computeOffset(START, 1, 45), 5000);
+        estimator.addFix(START, 10_000);
+        // THEN
+        assertFalse(estimator.isMoving());
+        assertNull(estimator.predict(60_000, 1000));
+    }
+
+    @Test
+    public void checkOldFixesAreForgotten() {
+        // GIVEN a movement, then a stop of more than a minute
+        MovementEstimator estimator = new MovementEstimator();
+        estimator.addFix(START, 0);
+        estimator.addFix(SphericalUtil.computeOffset(START, 100, 0), 30_000);
+        estimator.addFix(SphericalUtil.computeOffset(START, 100, 0), 100_000);
+        estimator.addFix(SphericalUtil.computeOffset(START, 100, 0), 105_000);
+        // THEN
+        assertFalse(estimator.isMoving());
+    }
+}
@@ -0,0 +1,66 @@
+package com.fthiery.go4lunch.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RestaurantSearchIndexTest {
+
+    private final RestaurantSearchIndex index = new RestaurantSearchIndex();
+
+    @Before
+    public void fillIndex() {
+        index.add("1", "Le Café des Arts", "12 rue de la République, Lyon");
+        index.add("2", "Pizzeria Napoli", "3 place Bellecour, Lyon");
+        index.add("3", "Crêperie Bretonne", "8 rue Mercière, Lyon");
+        index.add("4", "Pizza Hut", "45 cours Lafayette, Lyon");
+    }
+
+    @Test
+    public void checkPrefixSearch() {
+        assertEquals(Arrays.asList("4", "2"), index.search("pizza", 10));
+        assertEquals(Arrays.asList("2", "4"), index.search("piz", 10));
+    }
+
+    @Test
+    public void checkAccentsAndCaseAreIgnored() {
+        assertEquals(Collections.singletonList("3"), index.search("CREPERIE", 10));
+        assertEquals(Collections.singletonList("1"), index.search("cafe", 10));
+        assertEquals(Collections.singletonList("3"), index.search("mercière", 10));
+    }
+
+    @Test
+    public void checkTyposAreTolerated() {
+        assertEquals(Collections.singletonList("2"), index.search("pizzzeria", 10));
+        assertEquals(Collections.singletonList("2"), index.search("naploi", 10));
+        // A typo in a word still being typed
+        assertEquals(Collections.singletonList("3"), index.search("crepr", 10));
+    }
+
+    @Test
+    public void checkEveryWordMustMatch() {
+        assertEquals(Collections.singletonList("2"), index.search("pizzeria bellecour", 10));
+        assertTrue(index.search("pizzeria mercière", 10).isEmpty());
+    }
+
+    @Test
+    public void checkRemovedEntryIsNotFound() {
+        // WHEN
+        index.remove("2");
+        index.add("4", "Domino's");
+        // THEN
+        assertTrue(index.search("pizza", 10).isEmpty());
+        assertEquals(Collections.singletonList("4"), index.search("domino", 10));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void checkLimit() {
+        assertEquals(4, index.search("lyon", 10).size());
+        assertEquals(2, index.search("lyon", 2).size());
+    }
+}